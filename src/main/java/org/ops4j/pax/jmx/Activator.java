@@ -18,6 +18,8 @@ package org.ops4j.pax.jmx;
 
 import org.ops4j.pax.jmx.beans.ServiceAbstractMBean;
 import org.ops4j.pax.jmx.beans.framework.*;
+import org.ops4j.pax.jmx.framework.BundleDependencyGraphMBean;
+import org.ops4j.pax.jmx.framework.ServiceRegistryMetricsMBean;
 import org.ops4j.pax.jmx.service.monitor.MonitorAdminMBean;
 import org.osgi.framework.*;
 import org.osgi.jmx.framework.BundleStateMBean;
@@ -90,6 +92,14 @@ public class Activator implements BundleActivator, OsgiVisitor, LogVisitor {
      * {@link ServiceStateMBean} implementation instance
      */
     private ServiceState serviceState;
+    /**
+     * {@link BundleDependencyGraphMBean} implementation instance
+     */
+    private BundleDependencyGraph bundleDependencyGraph;
+    /**
+     * {@link ServiceRegistryMetricsMBean} implementation instance
+     */
+    private ServiceRegistryMetrics serviceRegistryMetrics;
 
     /**
      * ServiceTracker for {@link PackageAdmin} services
@@ -161,6 +171,8 @@ public class Activator implements BundleActivator, OsgiVisitor, LogVisitor {
 
     private void tryToUnregisterBeans() {
         if (server != null) {
+            unregisterBean(ServiceRegistryMetricsMBean.OBJECTNAME);
+            unregisterBean(BundleDependencyGraphMBean.OBJECTNAME);
             unregisterBean(PackageStateMBean.OBJECTNAME);
             unregisterBean(ServiceStateMBean.OBJECTNAME);
             unregisterBean(BundleStateMBean.OBJECTNAME);
@@ -295,6 +307,13 @@ public class Activator implements BundleActivator, OsgiVisitor, LogVisitor {
     }
 
     private void unregisterJmxBeans() {
+        bc.removeFrameworkListener(bundleDependencyGraph);
+        bc.removeBundleListener(bundleDependencyGraph);
+        unregisterBean(BundleDependencyGraphMBean.OBJECTNAME);
+        bundleDependencyGraph.uninit();
+
+        bc.removeFrameworkListener(packageState);
+        bc.removeBundleListener(packageState);
         unregisterBean(PackageStateMBean.OBJECTNAME);
         packageState.uninit();
 
@@ -302,6 +321,11 @@ public class Activator implements BundleActivator, OsgiVisitor, LogVisitor {
         unregisterBean(ServiceStateMBean.OBJECTNAME);
         serviceState.uninit();
 
+        bc.removeBundleListener(serviceRegistryMetrics);
+        unregisterBean(ServiceRegistryMetricsMBean.OBJECTNAME);
+        serviceRegistryMetrics.uninit();
+
+        bc.removeFrameworkListener(bundleState);
         bc.removeBundleListener(bundleState);
         unregisterBean(BundleStateMBean.OBJECTNAME);
         bundleState.uninit();
@@ -321,18 +345,36 @@ public class Activator implements BundleActivator, OsgiVisitor, LogVisitor {
         bundleState.setVisitor(this);
         bundleState.setLogVisitor(this);
         bc.addBundleListener(bundleState);
+        bc.addFrameworkListener(bundleState);
         server.registerMBean(bundleState, new ObjectName(BundleStateMBean.OBJECTNAME));
 
+        serviceRegistryMetrics = new ServiceRegistryMetrics();
+        serviceRegistryMetrics.setVisitor(this);
+        serviceRegistryMetrics.setLogVisitor(this);
+        bc.addBundleListener(serviceRegistryMetrics);
+        server.registerMBean(serviceRegistryMetrics, new ObjectName(ServiceRegistryMetricsMBean.OBJECTNAME));
+
         serviceState = new ServiceState();
         serviceState.setVisitor(this);
         serviceState.setLogVisitor(this);
+        serviceState.setMetrics(serviceRegistryMetrics);
         bc.addServiceListener(serviceState);
+        serviceState.init();
         server.registerMBean(serviceState, new ObjectName(ServiceStateMBean.OBJECTNAME));
 
         packageState = new PackageState();
         packageState.setVisitor(this);
         packageState.setLogVisitor(this);
+        bc.addBundleListener(packageState);
+        bc.addFrameworkListener(packageState);
         server.registerMBean(packageState, new ObjectName(PackageStateMBean.OBJECTNAME));
+
+        bundleDependencyGraph = new BundleDependencyGraph();
+        bundleDependencyGraph.setVisitor(this);
+        bundleDependencyGraph.setLogVisitor(this);
+        bc.addBundleListener(bundleDependencyGraph);
+        bc.addFrameworkListener(bundleDependencyGraph);
+        server.registerMBean(bundleDependencyGraph, new ObjectName(BundleDependencyGraphMBean.OBJECTNAME));
     }
 
     public void debug(String message, Throwable throwable) {
@@ -432,6 +474,18 @@ public class Activator implements BundleActivator, OsgiVisitor, LogVisitor {
         return bc.registerService(className, object, props);
     }
 
+    public ServiceReference[] getAllServiceReferences(String filter) {
+        try {
+            ServiceReference[] serviceReferences = bc.getAllServiceReferences(null, filter);
+            if (serviceReferences == null) {
+                return new ServiceReference[0];
+            }
+            return serviceReferences;
+        } catch (InvalidSyntaxException e) {
+            throw new IllegalArgumentException("Filter is wrong: " + filter, e);
+        }
+    }
+
     private String createServiceIdFilter(long id) {
         StringBuilder builder = new StringBuilder();
         builder.append('(');
@@ -35,6 +35,21 @@ import java.util.*;
  * @author dmytro.pishchukhin
  */
 public class Utils {
+    private static final Comparator<Bundle> BUNDLE_ID_COMPARATOR = new Comparator<Bundle>() {
+        public int compare(Bundle bundle1, Bundle bundle2) {
+            long id1 = bundle1.getBundleId();
+            long id2 = bundle2.getBundleId();
+            return id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
+        }
+    };
+    private static final Comparator<ServiceReference> SERVICE_ID_COMPARATOR = new Comparator<ServiceReference>() {
+        public int compare(ServiceReference reference1, ServiceReference reference2) {
+            long id1 = (Long) reference1.getProperty(Constants.SERVICE_ID);
+            long id2 = (Long) reference2.getProperty(Constants.SERVICE_ID);
+            return id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
+        }
+    };
+
     /**
      * Get type by value
      *
@@ -271,6 +286,38 @@ public class Utils {
         return result;
     }
 
+    /**
+     * Sort bundles by bundle ID
+     *
+     * @param bundles bundles array
+     * @return non-<code>null</code> sorted copy of bundles array
+     */
+    public static Bundle[] sortById(Bundle[] bundles) {
+        if (bundles == null) {
+            return new Bundle[0];
+        }
+        Bundle[] result = new Bundle[bundles.length];
+        System.arraycopy(bundles, 0, result, 0, bundles.length);
+        Arrays.sort(result, BUNDLE_ID_COMPARATOR);
+        return result;
+    }
+
+    /**
+     * Sort service references by service ID
+     *
+     * @param serviceReferences service references
+     * @return non-<code>null</code> sorted copy of service references
+     */
+    public static ServiceReference[] sortById(ServiceReference[] serviceReferences) {
+        if (serviceReferences == null) {
+            return new ServiceReference[0];
+        }
+        ServiceReference[] result = new ServiceReference[serviceReferences.length];
+        System.arraycopy(serviceReferences, 0, result, 0, serviceReferences.length);
+        Arrays.sort(result, SERVICE_ID_COMPARATOR);
+        return result;
+    }
+
     /**
      * Convert primitive long array to Long array
      *
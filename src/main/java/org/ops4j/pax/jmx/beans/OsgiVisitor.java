@@ -38,6 +38,8 @@ public interface OsgiVisitor {
 
     ServiceReference[] getAllServiceReferences();
 
+    ServiceReference[] getAllServiceReferences(String filter);
+
     PackageAdmin getPackageAdmin();
 
     StartLevel getStartLevel();
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import org.ops4j.pax.jmx.Utils;
+import org.ops4j.pax.jmx.beans.AbstractMBean;
+import org.ops4j.pax.jmx.framework.BundleDependencyGraphMBean;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.service.packageadmin.ExportedPackage;
+import org.osgi.service.packageadmin.PackageAdmin;
+import org.osgi.service.packageadmin.RequiredBundle;
+
+import javax.management.NotCompliantMBeanException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BundleDependencyGraphMBean Implementation. The graph is built on first use and rebuilt after
+ * the wiring is changed.
+ *
+ * @author dmytro.pishchukhin
+ */
+public class BundleDependencyGraph extends AbstractMBean implements BundleDependencyGraphMBean, FrameworkListener, BundleListener {
+    private DependencyGraph graph;
+
+    public BundleDependencyGraph() throws NotCompliantMBeanException {
+        super(BundleDependencyGraphMBean.class);
+    }
+
+    public long[] getDependencies(long bundleIdentifier) throws IOException {
+        try {
+            checkBundle(bundleIdentifier);
+            return getGraph().getDependencies(bundleIdentifier);
+        } catch (IllegalArgumentException e) {
+            logVisitor.warning("getDependencies error", e);
+            throw e;
+        } catch (IOException e) {
+            logVisitor.warning("getDependencies error", e);
+            throw e;
+        } catch (Exception e) {
+            logVisitor.warning("getDependencies error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public long[] getDependents(long bundleIdentifier) throws IOException {
+        try {
+            checkBundle(bundleIdentifier);
+            return getGraph().getDependents(bundleIdentifier);
+        } catch (IllegalArgumentException e) {
+            logVisitor.warning("getDependents error", e);
+            throw e;
+        } catch (IOException e) {
+            logVisitor.warning("getDependents error", e);
+            throw e;
+        } catch (Exception e) {
+            logVisitor.warning("getDependents error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public long[] getRefreshClosure(long[] bundleIdentifiers) throws IOException {
+        try {
+            if (bundleIdentifiers == null) {
+                throw new IllegalArgumentException("Bundle IDs are not defined");
+            }
+            for (long bundleIdentifier : bundleIdentifiers) {
+                checkBundle(bundleIdentifier);
+            }
+            return getGraph().getRefreshClosure(bundleIdentifiers);
+        } catch (IllegalArgumentException e) {
+            logVisitor.warning("getRefreshClosure error", e);
+            throw e;
+        } catch (IOException e) {
+            logVisitor.warning("getRefreshClosure error", e);
+            throw e;
+        } catch (Exception e) {
+            logVisitor.warning("getRefreshClosure error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public synchronized void frameworkEvent(FrameworkEvent event) {
+        if (event.getType() == FrameworkEvent.PACKAGES_REFRESHED) {
+            graph = null;
+        }
+    }
+
+    public synchronized void bundleChanged(BundleEvent event) {
+        // newly resolved bundles are wired without packages refresh
+        if (event.getType() == BundleEvent.RESOLVED) {
+            graph = null;
+        }
+    }
+
+    @Override
+    public void uninit() {
+        synchronized (this) {
+            graph = null;
+        }
+        super.uninit();
+    }
+
+    private void checkBundle(long bundleIdentifier) {
+        if (visitor.getBundle(bundleIdentifier) == null) {
+            throw new IllegalArgumentException("Bundle ID is wrong: " + bundleIdentifier);
+        }
+    }
+
+    private synchronized DependencyGraph getGraph() throws IOException {
+        if (graph == null) {
+            PackageAdmin packageAdmin = visitor.getPackageAdmin();
+            if (packageAdmin == null) {
+                throw new IOException("PackageAdmin is not available");
+            }
+            graph = createGraph(visitor.getBundles(), packageAdmin);
+        }
+        return graph;
+    }
+
+    /**
+     * Build dependency graph from the current wiring
+     *
+     * @param bundles      all bundles
+     * @param packageAdmin <code>PackageAdmin</code> service
+     * @return dependency graph
+     */
+    static DependencyGraph createGraph(Bundle[] bundles, PackageAdmin packageAdmin) {
+        List<long[]> dependencies = new ArrayList<long[]>();
+        ExportedPackage[] exportedPackages = packageAdmin.getExportedPackages((Bundle) null);
+        if (exportedPackages != null) {
+            for (ExportedPackage exportedPackage : exportedPackages) {
+                Bundle exportingBundle = exportedPackage.getExportingBundle();
+                Bundle[] importingBundles = exportedPackage.getImportingBundles();
+                if (exportingBundle != null && importingBundles != null) {
+                    for (Bundle importingBundle : importingBundles) {
+                        dependencies.add(new long[]{importingBundle.getBundleId(), exportingBundle.getBundleId()});
+                    }
+                }
+            }
+        }
+        RequiredBundle[] requiredBundles = packageAdmin.getRequiredBundles(null);
+        if (requiredBundles != null) {
+            for (RequiredBundle requiredBundle : requiredBundles) {
+                Bundle bundle = requiredBundle.getBundle();
+                Bundle[] requiringBundles = requiredBundle.getRequiringBundles();
+                if (bundle != null && requiringBundles != null) {
+                    for (Bundle requiringBundle : requiringBundles) {
+                        dependencies.add(new long[]{requiringBundle.getBundleId(), bundle.getBundleId()});
+                    }
+                }
+            }
+        }
+        List<long[]> attachments = new ArrayList<long[]>();
+        if (bundles != null) {
+            for (Bundle bundle : bundles) {
+                Bundle[] fragments = packageAdmin.getFragments(bundle);
+                if (fragments != null) {
+                    for (Bundle fragment : fragments) {
+                        attachments.add(new long[]{fragment.getBundleId(), bundle.getBundleId()});
+                    }
+                }
+            }
+        }
+        return new DependencyGraph(Utils.getIds(bundles), dependencies.toArray(new long[dependencies.size()][]),
+                attachments.toArray(new long[attachments.size()][]));
+    }
+}
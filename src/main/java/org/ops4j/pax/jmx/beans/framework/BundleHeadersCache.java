@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import javax.management.openmbean.TabularData;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of bundle headers tables. Headers are cached by bundle ID,
+ * last modification time and locale, so an updated bundle never gets headers of the previous revision.
+ * Raw headers are cached with the empty locale and headers of the default locale with the <code>null</code> locale.
+ *
+ * @author dmytro.pishchukhin
+ */
+public class BundleHeadersCache {
+    private final Map<Key, TabularData> headers;
+
+    /**
+     * Create cache
+     *
+     * @param maxSize maximum number of cached headers tables
+     */
+    public BundleHeadersCache(final int maxSize) {
+        headers = new LinkedHashMap<Key, TabularData>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, TabularData> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get cached headers
+     *
+     * @param bundleId     bundle ID
+     * @param lastModified bundle last modification time
+     * @param locale       headers locale or <code>null</code> for the default locale
+     * @return cached headers or <code>null</code>
+     */
+    public synchronized TabularData get(long bundleId, long lastModified, String locale) {
+        return headers.get(new Key(bundleId, lastModified, locale));
+    }
+
+    /**
+     * Cache headers
+     *
+     * @param bundleId     bundle ID
+     * @param lastModified bundle last modification time
+     * @param locale       headers locale or <code>null</code> for the default locale
+     * @param data         headers table
+     */
+    public synchronized void put(long bundleId, long lastModified, String locale, TabularData data) {
+        headers.put(new Key(bundleId, lastModified, locale), data);
+    }
+
+    /**
+     * Remove all cached headers of bundle
+     *
+     * @param bundleId bundle ID
+     */
+    public synchronized void remove(long bundleId) {
+        Iterator<Key> iterator = headers.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().bundleId == bundleId) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove all cached headers
+     */
+    public synchronized void clear() {
+        headers.clear();
+    }
+
+    private static class Key {
+        private final long bundleId;
+        private final long lastModified;
+        private final String locale;
+
+        private Key(long bundleId, long lastModified, String locale) {
+            this.bundleId = bundleId;
+            this.lastModified = lastModified;
+            this.locale = locale;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return bundleId == key.bundleId && lastModified == key.lastModified
+                    && (locale != null ? locale.equals(key.locale) : key.locale == null);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (bundleId ^ (bundleId >>> 32));
+            result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+            result = 31 * result + (locale != null ? locale.hashCode() : 0);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import java.io.*;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads bundles concurrently into temporary files and hands them out in the requested order.
+ * At most <code>window</code> downloads are started ahead of the consumer, so temporary storage is bounded.
+ * Temporary files are deleted when their streams are closed and at the latest by {@link #close()}.
+ *
+ * @author dmytro.pishchukhin
+ */
+public class BundlePrefetcher {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String[] urls;
+    private final ExecutorService executor;
+    private final int window;
+    private final File directory;
+    private final List<Future<File>> downloads = new ArrayList<Future<File>>();
+    private final Queue<File> files = new ConcurrentLinkedQueue<File>();
+    private volatile boolean closed;
+    private int next;
+
+    /**
+     * Create prefetcher and start first downloads
+     *
+     * @param urls      bundle URLs
+     * @param executor  executor for downloads
+     * @param window    maximum number of downloads ahead of the consumer
+     * @param directory directory for temporary files or <code>null</code> for the default temporary directory
+     */
+    public BundlePrefetcher(String[] urls, ExecutorService executor, int window, File directory) {
+        this.urls = urls;
+        this.executor = executor;
+        this.window = window;
+        this.directory = directory;
+        schedule();
+    }
+
+    /**
+     * Get stream of the next bundle. It waits until the bundle is downloaded
+     *
+     * @return stream of downloaded bundle. The temporary file is deleted when the stream is closed
+     * @throws IOException if the bundle download failed
+     */
+    public InputStream next() throws IOException {
+        if (next >= urls.length) {
+            throw new IllegalStateException("No more bundles");
+        }
+        Future<File> download = downloads.get(next++);
+        schedule();
+        final File file;
+        try {
+            file = download.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Bundle download is interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage());
+        }
+        return new FileInputStream(file) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                file.delete();
+            }
+        };
+    }
+
+    /**
+     * Cancel remaining downloads and delete temporary files
+     */
+    public void close() {
+        closed = true;
+        for (Future<File> download : downloads) {
+            download.cancel(true);
+        }
+        File file;
+        while ((file = files.poll()) != null) {
+            file.delete();
+        }
+    }
+
+    private void schedule() {
+        while (downloads.size() < urls.length && downloads.size() < next + window) {
+            final String url = urls[downloads.size()];
+            downloads.add(executor.submit(new Callable<File>() {
+                public File call() throws Exception {
+                    return download(url);
+                }
+            }));
+        }
+    }
+
+    private File download(String url) throws IOException {
+        File file = File.createTempFile("bundle", ".jar", directory);
+        files.add(file);
+        if (closed) {
+            file.delete();
+            throw new InterruptedIOException("Prefetcher is closed");
+        }
+        InputStream in = new URL(url).openStream();
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        if (closed) {
+            file.delete();
+        }
+        return file;
+    }
+}
@@ -18,9 +18,12 @@ package org.ops4j.pax.jmx.beans.framework;
 
 import org.ops4j.pax.jmx.Utils;
 import org.ops4j.pax.jmx.beans.AbstractMBean;
+import org.ops4j.pax.jmx.framework.ExtendedBundleStateMBean;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleEvent;
 import org.osgi.framework.BundleListener;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
 import org.osgi.jmx.framework.BundleStateMBean;
 import org.osgi.service.packageadmin.ExportedPackage;
 import org.osgi.service.packageadmin.PackageAdmin;
@@ -28,26 +31,114 @@ import org.osgi.service.packageadmin.RequiredBundle;
 import org.osgi.service.startlevel.StartLevel;
 
 import javax.management.*;
-import javax.management.openmbean.CompositeDataSupport;
-import javax.management.openmbean.OpenDataException;
-import javax.management.openmbean.TabularData;
-import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.*;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * BundleStateMBean Implementation
+ * BundleStateMBean and ExtendedBundleStateMBean Implementation
  *
  * @author dmytro.pishchukhin
  */
-public class BundleState extends AbstractMBean implements BundleStateMBean, NotificationBroadcaster, BundleListener {
+public class BundleState extends AbstractMBean implements ExtendedBundleStateMBean, NotificationBroadcaster, BundleListener, FrameworkListener {
+    /**
+     * System property that enables parallel building of <code>listBundles</code> rows
+     */
+    public static final String BUNDLES_PARALLEL_PROPS = "org.ops4j.pax.jmx.beans.framework.bundles.parallel";
+    /**
+     * System property with the minimal number of bundles that are listed in parallel
+     */
+    public static final String BUNDLES_PARALLEL_THRESHOLD_PROPS = "org.ops4j.pax.jmx.beans.framework.bundles.parallel.threshold";
+    /**
+     * System property with the maximum number of threads that build <code>listBundles</code> rows
+     */
+    public static final String BUNDLES_PARALLEL_THREADS_PROPS = "org.ops4j.pax.jmx.beans.framework.bundles.parallel.threads";
+    /**
+     * Bundle items that are read from the imported packages part of the wiring snapshot
+     */
+    private static final Set<String> IMPORTS_WIRING_ITEMS = new HashSet<String>(Arrays.asList(IMPORTED_PACKAGES));
+    /**
+     * Bundle items that are read from the required bundles part of the wiring snapshot
+     */
+    private static final Set<String> REQUIRED_WIRING_ITEMS = new HashSet<String>(Arrays.asList(
+            REMOVAL_PENDING, REQUIRED, REQUIRED_BUNDLES, REQUIRING_BUNDLES));
+    /**
+     * Bundle items that are read from the fragments part of the wiring snapshot
+     */
+    private static final Set<String> FRAGMENTS_WIRING_ITEMS = new HashSet<String>(Arrays.asList(FRAGMENTS, HOSTS));
+    /**
+     * Wiring snapshot parts that are changed with bundle and framework events only
+     */
+    private static final int EVENT_WIRING_PARTS = WiringSnapshot.REQUIRED_BUNDLES | WiringSnapshot.FRAGMENTS;
+    /**
+     * Bundle items that require <code>PackageAdmin</code>
+     */
+    private static final Set<String> PACKAGE_ADMIN_ITEMS = new HashSet<String>(Arrays.asList(
+            EXPORTED_PACKAGES, FRAGMENT, FRAGMENTS, HOSTS, IMPORTED_PACKAGES, REMOVAL_PENDING, REQUIRED,
+            REQUIRED_BUNDLES, REQUIRING_BUNDLES));
+    /**
+     * Bundle items that require <code>StartLevel</code>
+     */
+    private static final Set<String> START_LEVEL_ITEMS = new HashSet<String>(Arrays.asList(
+            PERSISTENTLY_STARTED, START_LEVEL));
+
+    /**
+     * Maximum number of uninstalled bundle IDs that are kept for <code>listBundlesChangedSince</code>
+     */
+    private static final int MAX_UNINSTALLED_BUNDLES = 1000;
+    /**
+     * Maximum number of cached bundle headers tables
+     */
+    private static final int MAX_CACHED_HEADERS = 2048;
+    /**
+     * Default minimal number of bundles that are listed in parallel
+     */
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 500;
+
     private NotificationBroadcasterSupport nbs;
     private MBeanNotificationInfo[] notificationInfos;
 
     private int sequenceNumber = 0;
 
+    /**
+     * Finished <code>listBundles</code> rows by bundle ID. A cached row saves building of the row composite data,
+     * headers and exported packages. Columns that are changed without bundle events are still read for every
+     * bundle on every call to validate the row: state, start level, persistently started flag, services and
+     * imported packages, that needs a scan of importers of all exported packages.
+     */
+    private final ConcurrentMap<Long, CachedRow> rows = new ConcurrentHashMap<Long, CachedRow>();
+    /**
+     * Counter of received bundle events
+     */
+    private final AtomicLong bundleEvents = new AtomicLong();
+    /**
+     * Stamp that is changed every time the bundles wiring could be changed
+     */
+    private final AtomicLong wiringStamp = new AtomicLong();
+    private volatile CachedWiring wiring;
+    /**
+     * Generations of changed and uninstalled bundles
+     */
+    private final ChangeTracker changeTracker = new ChangeTracker(MAX_UNINSTALLED_BUNDLES);
+    /**
+     * IDs of updated and unresolved bundles whose wiring is changed again by the next packages refresh
+     */
+    private final Set<Long> refreshPending = new HashSet<Long>();
+    private final BundleHeadersCache headersCache = new BundleHeadersCache(MAX_CACHED_HEADERS);
+    /**
+     * Projected bundles table types by item names
+     */
+    private final ConcurrentMap<String, TabularType> projectedTypes = new ConcurrentHashMap<String, TabularType>();
+    /**
+     * Bounded pool for parallel rows building. Created on first parallel listing
+     */
+    private ExecutorService rowsExecutor;
+
     public BundleState() throws NotCompliantMBeanException {
-        super(BundleStateMBean.class);
+        super(ExtendedBundleStateMBean.class);
         nbs = new NotificationBroadcasterSupport();
     }
 
@@ -87,32 +178,97 @@ public class BundleState extends AbstractMBean implements BundleStateMBean, Noti
             }
             TabularDataSupport dataSupport = new TabularDataSupport(BUNDLES_TYPE);
             if (bundles != null) {
+                CachedWiring wiring = getWiring(bundles, true, packageAdmin, WiringSnapshot.ALL);
+                dataSupport.putAll(getBundlesData(Utils.sortById(bundles), wiring, packageAdmin, startLevel));
+            }
+            return dataSupport;
+        } catch (IOException e) {
+            logVisitor.warning("listBundles error", e);
+            throw e;
+        } catch (Exception e) {
+            logVisitor.warning("listBundles error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public TabularData listBundles(long fromBundleId, int limit) throws IOException {
+        try {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("Limit is wrong: " + limit);
+            }
+            Bundle[] bundles = visitor.getBundles();
+            PackageAdmin packageAdmin = visitor.getPackageAdmin();
+            if (packageAdmin == null) {
+                throw new IOException("PackageAdmin is not available");
+            }
+            StartLevel startLevel = visitor.getStartLevel();
+            if (startLevel == null) {
+                throw new IOException("StartLevel is not available");
+            }
+            TabularDataSupport dataSupport = new TabularDataSupport(BUNDLES_TYPE);
+            if (bundles != null) {
+                List<Bundle> page = new ArrayList<Bundle>();
+                for (Bundle bundle : Utils.sortById(bundles)) {
+                    if (page.size() >= limit) {
+                        break;
+                    }
+                    if (bundle.getBundleId() >= fromBundleId) {
+                        page.add(bundle);
+                    }
+                }
+                Bundle[] pageBundles = page.toArray(new Bundle[page.size()]);
+                // wiring is indexed for the page bundles only
+                CachedWiring wiring = getWiring(pageBundles, false, packageAdmin, WiringSnapshot.ALL);
+                dataSupport.putAll(getBundlesData(pageBundles, wiring, packageAdmin, startLevel));
+            }
+            return dataSupport;
+        } catch (IllegalArgumentException e) {
+            logVisitor.warning("listBundles error", e);
+            throw e;
+        } catch (IOException e) {
+            logVisitor.warning("listBundles error", e);
+            throw e;
+        } catch (Exception e) {
+            logVisitor.warning("listBundles error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public TabularData listBundles(String[] items) throws IOException {
+        try {
+            TabularType type = getProjectedType(items);
+            Set<String> projection = type.getRowType().keySet();
+            Bundle[] bundles = visitor.getBundles();
+            PackageAdmin packageAdmin = null;
+            if (containsAny(projection, PACKAGE_ADMIN_ITEMS)) {
+                packageAdmin = visitor.getPackageAdmin();
+                if (packageAdmin == null) {
+                    throw new IOException("PackageAdmin is not available");
+                }
+            }
+            StartLevel startLevel = null;
+            if (containsAny(projection, START_LEVEL_ITEMS)) {
+                startLevel = visitor.getStartLevel();
+                if (startLevel == null) {
+                    throw new IOException("StartLevel is not available");
+                }
+            }
+            TabularDataSupport dataSupport = new TabularDataSupport(type);
+            if (bundles != null) {
+                WiringSnapshot wiring = null;
+                int parts = getWiringParts(projection);
+                if (parts != 0) {
+                    wiring = getWiring(bundles, true, packageAdmin, parts).snapshot;
+                }
                 for (Bundle bundle : bundles) {
-                    Map<String, Object> values = new HashMap<String, Object>();
-                    values.put(EXPORTED_PACKAGES, getExportedPackages(bundle, packageAdmin));
-                    values.put(FRAGMENT, isFragment(bundle, packageAdmin));
-                    values.put(FRAGMENTS, Utils.toLongArray(getFragments(bundle, packageAdmin)));
-                    values.put(HEADERS, getHeaders(bundle));
-                    values.put(HOSTS, Utils.toLongArray(getHosts(bundle, packageAdmin)));
-                    values.put(IDENTIFIER, bundle.getBundleId());
-                    values.put(IMPORTED_PACKAGES, getImportedPackages(bundle, packageAdmin));
-                    values.put(LAST_MODIFIED, bundle.getLastModified());
-                    values.put(LOCATION, bundle.getLocation());
-                    values.put(PERSISTENTLY_STARTED, isPersistentlyStarted(bundle, startLevel));
-                    values.put(REGISTERED_SERVICES, Utils.toLongArray(getRegisteredServices(bundle)));
-                    values.put(REMOVAL_PENDING, isRemovalPending(bundle, packageAdmin));
-                    values.put(REQUIRED, isRequired(bundle, packageAdmin));
-                    values.put(REQUIRED_BUNDLES, Utils.toLongArray(getRequiredBundles(bundle, packageAdmin)));
-                    values.put(REQUIRING_BUNDLES, Utils.toLongArray(getRequiringBundles(bundle, packageAdmin)));
-                    values.put(START_LEVEL, getStartLevel(bundle, startLevel));
-                    values.put(STATE, getState(bundle));
-                    values.put(SERVICES_IN_USE, Utils.toLongArray(getServicesInUse(bundle)));
-                    values.put(SYMBOLIC_NAME, getSymbolicName(bundle));
-                    values.put(VERSION, getVersion(bundle));
-                    dataSupport.put(new CompositeDataSupport(BUNDLE_TYPE, values));
+                    dataSupport.put(new CompositeDataSupport(type.getRowType(),
+                            getBundleValues(bundle, projection, wiring, packageAdmin, startLevel)));
                 }
             }
             return dataSupport;
+        } catch (IllegalArgumentException e) {
+            logVisitor.warning("listBundles error", e);
+            throw e;
         } catch (IOException e) {
             logVisitor.warning("listBundles error", e);
             throw e;
@@ -122,6 +278,181 @@ public class BundleState extends AbstractMBean implements BundleStateMBean, Noti
         }
     }
 
+    public CompositeData listBundlesChangedSince(long generation) throws IOException {
+        try {
+            long currentGeneration = changeTracker.getGeneration();
+            Bundle[] bundles = visitor.getBundles();
+            PackageAdmin packageAdmin = visitor.getPackageAdmin();
+            if (packageAdmin == null) {
+                throw new IOException("PackageAdmin is not available");
+            }
+            StartLevel startLevel = visitor.getStartLevel();
+            if (startLevel == null) {
+                throw new IOException("StartLevel is not available");
+            }
+            // rows are built before changes are collected, so changes without bundle events are detected
+            CompositeData[] bundleRows = new CompositeData[0];
+            if (bundles != null) {
+                CachedWiring wiring = getWiring(bundles, true, packageAdmin, WiringSnapshot.ALL);
+                bundleRows = getBundlesData(Utils.sortById(bundles), wiring, packageAdmin, startLevel);
+            }
+            ChangeTracker.Changes changes = changeTracker.getChangesSince(generation);
+            TabularDataSupport dataSupport = new TabularDataSupport(BUNDLES_TYPE);
+            for (CompositeData bundleRow : bundleRows) {
+                if (changes.isFull() || changes.getChanged().contains((Long) bundleRow.get(IDENTIFIER))) {
+                    dataSupport.put(bundleRow);
+                }
+            }
+            Map<String, Object> values = new HashMap<String, Object>();
+            values.put(GENERATION, currentGeneration);
+            values.put(FULL, changes.isFull());
+            values.put(BUNDLES, dataSupport);
+            values.put(UNINSTALLED_BUNDLES, Utils.toLongArray(changes.getRemoved()));
+            return new CompositeDataSupport(BUNDLES_DELTA_TYPE, values);
+        } catch (IOException e) {
+            logVisitor.warning("listBundlesChangedSince error", e);
+            throw e;
+        } catch (Exception e) {
+            logVisitor.warning("listBundlesChangedSince error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public String[] getStates(long[] bundleIdentifiers) throws IOException {
+        try {
+            Bundle[] bundles = getBundles(bundleIdentifiers);
+            String[] result = new String[bundles.length];
+            for (int i = 0; i < bundles.length; i++) {
+                Bundle bundle = bundles[i];
+                if (bundle != null) {
+                    try {
+                        result[i] = getState(bundle);
+                    } catch (RuntimeException e) {
+                        logVisitor.debug("getStates error for bundle: " + bundleIdentifiers[i], e);
+                    }
+                }
+            }
+            return result;
+        } catch (Exception e) {
+            logVisitor.warning("getStates error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public String[] getSymbolicNames(long[] bundleIdentifiers) throws IOException {
+        try {
+            Bundle[] bundles = getBundles(bundleIdentifiers);
+            String[] result = new String[bundles.length];
+            for (int i = 0; i < bundles.length; i++) {
+                Bundle bundle = bundles[i];
+                if (bundle != null) {
+                    try {
+                        result[i] = getSymbolicName(bundle);
+                    } catch (RuntimeException e) {
+                        logVisitor.debug("getSymbolicNames error for bundle: " + bundleIdentifiers[i], e);
+                    }
+                }
+            }
+            return result;
+        } catch (Exception e) {
+            logVisitor.warning("getSymbolicNames error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public String[] getVersions(long[] bundleIdentifiers) throws IOException {
+        try {
+            Bundle[] bundles = getBundles(bundleIdentifiers);
+            String[] result = new String[bundles.length];
+            for (int i = 0; i < bundles.length; i++) {
+                Bundle bundle = bundles[i];
+                if (bundle != null) {
+                    try {
+                        result[i] = getVersion(bundle);
+                    } catch (RuntimeException e) {
+                        logVisitor.debug("getVersions error for bundle: " + bundleIdentifiers[i], e);
+                    }
+                }
+            }
+            return result;
+        } catch (Exception e) {
+            logVisitor.warning("getVersions error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public String[] getLocations(long[] bundleIdentifiers) throws IOException {
+        try {
+            Bundle[] bundles = getBundles(bundleIdentifiers);
+            String[] result = new String[bundles.length];
+            for (int i = 0; i < bundles.length; i++) {
+                Bundle bundle = bundles[i];
+                if (bundle != null) {
+                    try {
+                        result[i] = bundle.getLocation();
+                    } catch (RuntimeException e) {
+                        logVisitor.debug("getLocations error for bundle: " + bundleIdentifiers[i], e);
+                    }
+                }
+            }
+            return result;
+        } catch (Exception e) {
+            logVisitor.warning("getLocations error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public long[] getLastModifiedTimes(long[] bundleIdentifiers) throws IOException {
+        try {
+            Bundle[] bundles = getBundles(bundleIdentifiers);
+            long[] result = new long[bundles.length];
+            for (int i = 0; i < bundles.length; i++) {
+                Bundle bundle = bundles[i];
+                result[i] = -1;
+                if (bundle != null) {
+                    try {
+                        result[i] = bundle.getLastModified();
+                    } catch (RuntimeException e) {
+                        logVisitor.debug("getLastModifiedTimes error for bundle: " + bundleIdentifiers[i], e);
+                    }
+                }
+            }
+            return result;
+        } catch (Exception e) {
+            logVisitor.warning("getLastModifiedTimes error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public int[] getStartLevels(long[] bundleIdentifiers) throws IOException {
+        try {
+            Bundle[] bundles = getBundles(bundleIdentifiers);
+            StartLevel startLevel = visitor.getStartLevel();
+            if (startLevel == null) {
+                throw new IOException("StartLevel is not available");
+            }
+            int[] result = new int[bundles.length];
+            for (int i = 0; i < bundles.length; i++) {
+                Bundle bundle = bundles[i];
+                result[i] = -1;
+                if (bundle != null) {
+                    try {
+                        result[i] = getStartLevel(bundle, startLevel);
+                    } catch (RuntimeException e) {
+                        logVisitor.debug("getStartLevels error for bundle: " + bundleIdentifiers[i], e);
+                    }
+                }
+            }
+            return result;
+        } catch (IOException e) {
+            logVisitor.warning("getStartLevels error", e);
+            throw e;
+        } catch (Exception e) {
+            logVisitor.warning("getStartLevels error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
     public String[] getExportedPackages(long bundleIdentifier) throws IOException {
         try {
             Bundle bundle = visitor.getBundle(bundleIdentifier);
@@ -184,6 +515,40 @@ public class BundleState extends AbstractMBean implements BundleStateMBean, Noti
         }
     }
 
+    public TabularData getHeaders(long bundleIdentifier, String locale) throws IOException {
+        try {
+            Bundle bundle = visitor.getBundle(bundleIdentifier);
+            if (bundle == null) {
+                throw new IllegalArgumentException("Bundle ID is wrong: " + bundleIdentifier);
+            }
+            return getHeaders(bundle, locale);
+        } catch (IllegalArgumentException e) {
+            logVisitor.warning("getHeaders error", e);
+            throw e;
+        } catch (Exception e) {
+            logVisitor.warning("getHeaders error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public TabularData getHeaders(long[] bundleIdentifiers, String locale) throws IOException {
+        try {
+            TabularDataSupport dataSupport = new TabularDataSupport(BUNDLES_HEADERS_TYPE);
+            for (Bundle bundle : getBundles(bundleIdentifiers)) {
+                if (bundle != null) {
+                    Map<String, Object> values = new HashMap<String, Object>();
+                    values.put(IDENTIFIER, bundle.getBundleId());
+                    values.put(HEADERS, getHeaders(bundle, locale));
+                    dataSupport.put(new CompositeDataSupport(BUNDLE_HEADERS_TYPE, values));
+                }
+            }
+            return dataSupport;
+        } catch (Exception e) {
+            logVisitor.warning("getHeaders error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
     public long[] getHosts(long bundleIdentifier) throws IOException {
         try {
             Bundle bundle = visitor.getBundle(bundleIdentifier);
@@ -499,6 +864,39 @@ public class BundleState extends AbstractMBean implements BundleStateMBean, Noti
     }
 
     public synchronized void bundleChanged(BundleEvent event) {
+        bundleEvents.incrementAndGet();
+        rows.remove(event.getBundle().getBundleId());
+        if (event.getType() == BundleEvent.UNINSTALLED) {
+            changeTracker.removed(event.getBundle().getBundleId());
+            refreshPending.remove(event.getBundle().getBundleId());
+        } else {
+            changeTracker.changed(event.getBundle().getBundleId());
+        }
+        switch (event.getType()) {
+            case BundleEvent.UPDATED:
+            case BundleEvent.UNRESOLVED:
+                refreshPending.add(event.getBundle().getBundleId());
+                break;
+        }
+        switch (event.getType()) {
+            case BundleEvent.RESOLVED:
+            case BundleEvent.UNRESOLVED:
+                // localized headers could be changed with attached fragments
+            case BundleEvent.UPDATED:
+            case BundleEvent.UNINSTALLED:
+                headersCache.remove(event.getBundle().getBundleId());
+                break;
+        }
+        switch (event.getType()) {
+            case BundleEvent.INSTALLED:
+            case BundleEvent.RESOLVED:
+            case BundleEvent.UNRESOLVED:
+            case BundleEvent.UPDATED:
+            case BundleEvent.UNINSTALLED:
+                wiringStamp.incrementAndGet();
+                break;
+        }
+
         Notification notification = new Notification(BundleStateMBean.EVENT, this, ++sequenceNumber,
                 System.currentTimeMillis());
 
@@ -517,6 +915,330 @@ public class BundleState extends AbstractMBean implements BundleStateMBean, Noti
         }
     }
 
+    public synchronized void frameworkEvent(FrameworkEvent event) {
+        if (event.getType() == FrameworkEvent.PACKAGES_REFRESHED) {
+            wiringStamp.incrementAndGet();
+            // refresh drops the stale exports of the bundles, so their rows get the next generation
+            for (Long id : refreshPending) {
+                rows.remove(id);
+                changeTracker.changed(id);
+            }
+            refreshPending.clear();
+        }
+    }
+
+    @Override
+    public void uninit() {
+        synchronized (this) {
+            if (rowsExecutor != null) {
+                rowsExecutor.shutdownNow();
+                rowsExecutor = null;
+            }
+        }
+        rows.clear();
+        headersCache.clear();
+        wiring = null;
+        super.uninit();
+    }
+
+    private Bundle[] getBundles(long[] bundleIdentifiers) {
+        if (bundleIdentifiers == null) {
+            return new Bundle[0];
+        }
+        Bundle[] bundles = new Bundle[bundleIdentifiers.length];
+        for (int i = 0; i < bundleIdentifiers.length; i++) {
+            bundles[i] = visitor.getBundle(bundleIdentifiers[i]);
+        }
+        return bundles;
+    }
+
+    /**
+     * Get wiring snapshot for a bulk request. Fragments and required bundles are changed with events only,
+     * so their parts are reused from the kept snapshot of all bundles while the wiring stamp is current.
+     * Dynamic imports are wired without any event, so the imported packages part is built by every request.
+     *
+     * @param bundles    bundles to index
+     * @param allBundles <code>true</code> if <code>bundles</code> are all bundles of the framework
+     * @param parts      snapshot parts to build
+     */
+    private CachedWiring getWiring(Bundle[] bundles, boolean allBundles, PackageAdmin packageAdmin, int parts) {
+        long stamp = wiringStamp.get();
+        int eventParts = parts & EVENT_WIRING_PARTS;
+        WiringSnapshot snapshot = null;
+        if (eventParts != 0) {
+            CachedWiring cachedWiring = wiring;
+            if (cachedWiring != null && cachedWiring.stamp == stamp && cachedWiring.snapshot.hasParts(eventParts)) {
+                snapshot = cachedWiring.snapshot;
+            } else if (allBundles) {
+                snapshot = new WiringSnapshot(bundles, packageAdmin, EVENT_WIRING_PARTS);
+                wiring = new CachedWiring(stamp, snapshot);
+            } else {
+                snapshot = new WiringSnapshot(bundles, packageAdmin, eventParts);
+            }
+        }
+        if ((parts & WiringSnapshot.IMPORTED_PACKAGES) != 0) {
+            snapshot = snapshot != null ? snapshot.withImportedPackages(bundles, packageAdmin)
+                    : new WiringSnapshot(bundles, packageAdmin, WiringSnapshot.IMPORTED_PACKAGES);
+        }
+        if (snapshot == null) {
+            snapshot = new WiringSnapshot(bundles, packageAdmin, 0);
+        }
+        return new CachedWiring(stamp, snapshot);
+    }
+
+    /**
+     * Build rows of bundles in the order of bundles. Rows are built in parallel if parallel mode is enabled
+     * and the number of bundles reaches the threshold.
+     */
+    private CompositeData[] getBundlesData(Bundle[] bundles, CachedWiring wiring, PackageAdmin packageAdmin,
+                                           StartLevel startLevel) throws Exception {
+        CompositeData[] result = new CompositeData[bundles.length];
+        ExecutorService executor = null;
+        if (bundles.length >= getIntProperty(BUNDLES_PARALLEL_THRESHOLD_PROPS, DEFAULT_PARALLEL_THRESHOLD)) {
+            executor = getRowsExecutor();
+        }
+        if (executor == null) {
+            for (int i = 0; i < bundles.length; i++) {
+                result[i] = getBundleData(bundles[i], wiring, packageAdmin, startLevel);
+            }
+            return result;
+        }
+        int chunks = getIntProperty(BUNDLES_PARALLEL_THREADS_PROPS, Runtime.getRuntime().availableProcessors());
+        int chunkSize = (bundles.length + chunks - 1) / chunks;
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int from = 0; from < bundles.length; from += chunkSize) {
+            futures.add(executor.submit(new RowsTask(bundles, result, from, Math.min(from + chunkSize, bundles.length),
+                    wiring, packageAdmin, startLevel)));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return result;
+    }
+
+    private synchronized ExecutorService getRowsExecutor() {
+        if (rowsExecutor == null && Boolean.valueOf(visitor.getProperty(BUNDLES_PARALLEL_PROPS))) {
+            int threads = getIntProperty(BUNDLES_PARALLEL_THREADS_PROPS, Runtime.getRuntime().availableProcessors());
+            rowsExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "pax-jmx-bundles-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return rowsExecutor;
+    }
+
+    private int getIntProperty(String name, int defaultValue) {
+        String value = visitor.getProperty(name);
+        if (value != null) {
+            try {
+                int result = Integer.parseInt(value.trim());
+                if (result > 0) {
+                    return result;
+                }
+            } catch (NumberFormatException e) {
+                logVisitor.warning("Property value is wrong: " + name, e);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Get wiring snapshot that was built by a bulk request and is still valid
+     *
+     * @return wiring snapshot or <code>null</code>
+     */
+    private WiringSnapshot getCurrentWiring() {
+        CachedWiring cachedWiring = wiring;
+        if (cachedWiring != null && cachedWiring.stamp == wiringStamp.get()) {
+            return cachedWiring.snapshot;
+        }
+        return null;
+    }
+
+    private CompositeData getBundleData(Bundle bundle, CachedWiring wiring, PackageAdmin packageAdmin,
+                                        StartLevel startLevel) throws OpenDataException {
+        String state = getState(bundle);
+        int bundleStartLevel = getStartLevel(bundle, startLevel);
+        boolean persistentlyStarted = isPersistentlyStarted(bundle, startLevel);
+        Long[] registeredServices = Utils.toLongArray(getRegisteredServices(bundle));
+        Long[] servicesInUse = Utils.toLongArray(getServicesInUse(bundle));
+
+        String[] importedPackages = wiring.snapshot.getImportedPackages(bundle);
+
+        CachedRow row = rows.get(bundle.getBundleId());
+        if (row != null && row.wiringStamp == wiring.stamp
+                && row.matches(state, bundleStartLevel, persistentlyStarted, registeredServices, servicesInUse,
+                importedPackages)) {
+            return row.data;
+        }
+
+        long events = bundleEvents.get();
+        Map<String, Object> values = getBundleValues(bundle, BUNDLE_TYPE.keySet(), wiring.snapshot,
+                packageAdmin, startLevel);
+        CompositeData data = new CompositeDataSupport(BUNDLE_TYPE, values);
+        if (row != null && !isSameData(row.data, data)) {
+            // row is changed without bundle event: wiring, start level or services are changed
+            changeTracker.changed(bundle.getBundleId());
+        }
+
+        row = new CachedRow(wiring.stamp, data);
+        rows.put(bundle.getBundleId(), row);
+        if (bundleEvents.get() != events) {
+            // bundle event was received while the row was built
+            rows.remove(bundle.getBundleId(), row);
+        }
+        return data;
+    }
+
+    private static boolean isSameData(CompositeData data1, CompositeData data2) {
+        for (String item : BUNDLE_TYPE.keySet()) {
+            Object value1 = data1.get(item);
+            Object value2 = data2.get(item);
+            if (value1 instanceof Object[] && value2 instanceof Object[]) {
+                if (!Arrays.equals((Object[]) value1, (Object[]) value2)) {
+                    return false;
+                }
+            } else if (value1 == null ? value2 != null : !value1.equals(value2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Map<String, Object> getBundleValues(Bundle bundle, Set<String> items, WiringSnapshot wiring,
+                                                PackageAdmin packageAdmin, StartLevel startLevel)
+            throws OpenDataException {
+        Map<String, Object> values = new HashMap<String, Object>();
+        if (items.contains(EXPORTED_PACKAGES)) {
+            values.put(EXPORTED_PACKAGES, getExportedPackages(bundle, packageAdmin));
+        }
+        if (items.contains(FRAGMENT)) {
+            values.put(FRAGMENT, isFragment(bundle, packageAdmin));
+        }
+        if (items.contains(FRAGMENTS)) {
+            values.put(FRAGMENTS, Utils.toLongArray(wiring.getFragments(bundle)));
+        }
+        if (items.contains(HEADERS)) {
+            values.put(HEADERS, getHeaders(bundle));
+        }
+        if (items.contains(HOSTS)) {
+            values.put(HOSTS, Utils.toLongArray(wiring.getHosts(bundle)));
+        }
+        values.put(IDENTIFIER, bundle.getBundleId());
+        if (items.contains(IMPORTED_PACKAGES)) {
+            values.put(IMPORTED_PACKAGES, wiring.getImportedPackages(bundle));
+        }
+        if (items.contains(LAST_MODIFIED)) {
+            values.put(LAST_MODIFIED, bundle.getLastModified());
+        }
+        if (items.contains(LOCATION)) {
+            values.put(LOCATION, bundle.getLocation());
+        }
+        if (items.contains(PERSISTENTLY_STARTED)) {
+            values.put(PERSISTENTLY_STARTED, isPersistentlyStarted(bundle, startLevel));
+        }
+        if (items.contains(REGISTERED_SERVICES)) {
+            values.put(REGISTERED_SERVICES, Utils.toLongArray(getRegisteredServices(bundle)));
+        }
+        if (items.contains(REMOVAL_PENDING)) {
+            values.put(REMOVAL_PENDING, wiring.isRemovalPending(bundle));
+        }
+        if (items.contains(REQUIRED)) {
+            values.put(REQUIRED, wiring.isRequired(bundle));
+        }
+        if (items.contains(REQUIRED_BUNDLES)) {
+            values.put(REQUIRED_BUNDLES, Utils.toLongArray(wiring.getRequiredBundles(bundle)));
+        }
+        if (items.contains(REQUIRING_BUNDLES)) {
+            values.put(REQUIRING_BUNDLES, Utils.toLongArray(wiring.getRequiringBundles(bundle)));
+        }
+        if (items.contains(START_LEVEL)) {
+            values.put(START_LEVEL, getStartLevel(bundle, startLevel));
+        }
+        if (items.contains(STATE)) {
+            values.put(STATE, getState(bundle));
+        }
+        if (items.contains(SERVICES_IN_USE)) {
+            values.put(SERVICES_IN_USE, Utils.toLongArray(getServicesInUse(bundle)));
+        }
+        if (items.contains(SYMBOLIC_NAME)) {
+            values.put(SYMBOLIC_NAME, getSymbolicName(bundle));
+        }
+        if (items.contains(VERSION)) {
+            values.put(VERSION, getVersion(bundle));
+        }
+        return values;
+    }
+
+    private TabularType getProjectedType(String[] items) throws OpenDataException {
+        if (items == null || items.length == 0) {
+            throw new IllegalArgumentException("Bundle items are not defined");
+        }
+        Set<String> names = new TreeSet<String>();
+        names.add(IDENTIFIER);
+        for (String item : items) {
+            if (!BUNDLE_TYPE.containsKey(item)) {
+                throw new IllegalArgumentException("Bundle item is wrong: " + item);
+            }
+            names.add(item);
+        }
+        String key = names.toString();
+        TabularType type = projectedTypes.get(key);
+        if (type == null) {
+            String[] itemNames = names.toArray(new String[names.size()]);
+            String[] descriptions = new String[itemNames.length];
+            OpenType[] types = new OpenType[itemNames.length];
+            for (int i = 0; i < itemNames.length; i++) {
+                descriptions[i] = BUNDLE_TYPE.getDescription(itemNames[i]);
+                types[i] = BUNDLE_TYPE.getType(itemNames[i]);
+            }
+            // projected types differ from the full types, so their names differ too
+            CompositeType rowType = new CompositeType(BUNDLE_TYPE.getTypeName() + key,
+                    BUNDLE_TYPE.getDescription(), itemNames, descriptions, types);
+            type = new TabularType(BUNDLES_TYPE.getTypeName() + key, BUNDLES_TYPE.getDescription(), rowType,
+                    new String[]{IDENTIFIER});
+            projectedTypes.put(key, type);
+        }
+        return type;
+    }
+
+    private static int getWiringParts(Set<String> items) {
+        int parts = 0;
+        if (containsAny(items, IMPORTS_WIRING_ITEMS)) {
+            parts |= WiringSnapshot.IMPORTED_PACKAGES;
+        }
+        if (containsAny(items, REQUIRED_WIRING_ITEMS)) {
+            parts |= WiringSnapshot.REQUIRED_BUNDLES;
+        }
+        if (containsAny(items, FRAGMENTS_WIRING_ITEMS)) {
+            parts |= WiringSnapshot.FRAGMENTS;
+        }
+        return parts;
+    }
+
+    private static boolean containsAny(Set<String> items, Set<String> group) {
+        for (String item : group) {
+            if (items.contains(item)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private String[] getExportedPackages(Bundle bundle, PackageAdmin packageAdmin) {
         ExportedPackage[] exportedPackages = packageAdmin.getExportedPackages(bundle);
         List<String> result = new ArrayList<String>();
@@ -569,6 +1291,10 @@ public class BundleState extends AbstractMBean implements BundleStateMBean, Noti
     }
 
     private boolean isRemovalPending(Bundle bundle, PackageAdmin packageAdmin) {
+        WiringSnapshot snapshot = getCurrentWiring();
+        if (snapshot != null) {
+            return snapshot.isRemovalPending(bundle);
+        }
         RequiredBundle[] requiredBundles = packageAdmin.getRequiredBundles(bundle.getSymbolicName());
         if (requiredBundles != null) {
             for (RequiredBundle requiredBundle : requiredBundles) {
@@ -581,6 +1307,10 @@ public class BundleState extends AbstractMBean implements BundleStateMBean, Noti
     }
 
     private boolean isRequired(Bundle bundle, PackageAdmin packageAdmin) {
+        WiringSnapshot snapshot = getCurrentWiring();
+        if (snapshot != null) {
+            return snapshot.isRequired(bundle);
+        }
         RequiredBundle[] requiredBundles = packageAdmin.getRequiredBundles(bundle.getSymbolicName());
         if (requiredBundles != null) {
             for (RequiredBundle requiredBundle : requiredBundles) {
@@ -614,6 +1344,10 @@ public class BundleState extends AbstractMBean implements BundleStateMBean, Noti
     }
 
     private long[] getRequiredBundles(Bundle bundle, PackageAdmin packageAdmin) {
+        WiringSnapshot snapshot = getCurrentWiring();
+        if (snapshot != null) {
+            return snapshot.getRequiredBundles(bundle);
+        }
         RequiredBundle[] requiredBundles = packageAdmin.getRequiredBundles(null);
         if (requiredBundles != null) {
             Set<Bundle> result = new HashSet<Bundle>();
@@ -637,6 +1371,10 @@ public class BundleState extends AbstractMBean implements BundleStateMBean, Noti
     }
 
     private long[] getRequiringBundles(Bundle bundle, PackageAdmin packageAdmin) {
+        WiringSnapshot snapshot = getCurrentWiring();
+        if (snapshot != null) {
+            return snapshot.getRequiringBundles(bundle);
+        }
         RequiredBundle[] requiredBundles = packageAdmin.getRequiredBundles(bundle.getSymbolicName());
         if (requiredBundles != null) {
             for (RequiredBundle requiredBundle : requiredBundles) {
@@ -650,8 +1388,30 @@ public class BundleState extends AbstractMBean implements BundleStateMBean, Noti
     }
 
     private TabularData getHeaders(Bundle bundle) throws OpenDataException {
+        return getHeaders(bundle, null);
+    }
+
+    /**
+     * Get bundle headers
+     *
+     * @param locale headers locale, the empty string for the raw headers or <code>null</code> for the default locale
+     */
+    private TabularData getHeaders(Bundle bundle, String locale) throws OpenDataException {
+        long lastModified = bundle.getLastModified();
+        TabularData headers = headersCache.get(bundle.getBundleId(), lastModified, locale);
+        if (headers == null) {
+            if (locale == null) {
+                headers = createHeaders(bundle.getHeaders());
+            } else {
+                headers = createHeaders(bundle.getHeaders(locale));
+            }
+            headersCache.put(bundle.getBundleId(), lastModified, locale, headers);
+        }
+        return headers;
+    }
+
+    private TabularData createHeaders(Dictionary headers) throws OpenDataException {
         TabularDataSupport dataSupport = new TabularDataSupport(HEADERS_TYPE);
-        Dictionary headers = bundle.getHeaders();
         Enumeration keys = headers.keys();
         while (keys.hasMoreElements()) {
             String key = (String) keys.nextElement();
@@ -682,4 +1442,69 @@ public class BundleState extends AbstractMBean implements BundleStateMBean, Noti
         }
     }
 
+    /**
+     * Builds a range of rows into the shared result array
+     */
+    private class RowsTask implements Callable<Object> {
+        private final Bundle[] bundles;
+        private final CompositeData[] result;
+        private final int from;
+        private final int to;
+        private final CachedWiring wiring;
+        private final PackageAdmin packageAdmin;
+        private final StartLevel startLevel;
+
+        private RowsTask(Bundle[] bundles, CompositeData[] result, int from, int to, CachedWiring wiring,
+                         PackageAdmin packageAdmin, StartLevel startLevel) {
+            this.bundles = bundles;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+            this.wiring = wiring;
+            this.packageAdmin = packageAdmin;
+            this.startLevel = startLevel;
+        }
+
+        public Object call() throws Exception {
+            for (int i = from; i < to && !Thread.currentThread().isInterrupted(); i++) {
+                result[i] = getBundleData(bundles[i], wiring, packageAdmin, startLevel);
+            }
+            return null;
+        }
+    }
+
+    private static class CachedWiring {
+        final long stamp;
+        final WiringSnapshot snapshot;
+
+        private CachedWiring(long stamp, WiringSnapshot snapshot) {
+            this.stamp = stamp;
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * Bundle row that is valid until a bundle event or a wiring change. Start level, services and
+     * dynamically imported packages columns are changed without bundle events, so they are compared on every use.
+     */
+    private static class CachedRow {
+        final long wiringStamp;
+        final CompositeData data;
+
+        private CachedRow(long wiringStamp, CompositeData data) {
+            this.wiringStamp = wiringStamp;
+            this.data = data;
+        }
+
+        boolean matches(String state, int startLevel, boolean persistentlyStarted,
+                        Long[] registeredServices, Long[] servicesInUse, String[] importedPackages) {
+            return state.equals(data.get(STATE))
+                    && startLevel == (Integer) data.get(START_LEVEL)
+                    && persistentlyStarted == (Boolean) data.get(PERSISTENTLY_STARTED)
+                    && Arrays.equals(registeredServices, (Long[]) data.get(REGISTERED_SERVICES))
+                    && Arrays.equals(servicesInUse, (Long[]) data.get(SERVICES_IN_USE))
+                    && new HashSet<String>(Arrays.asList(importedPackages)).equals(
+                    new HashSet<String>(Arrays.asList((String[]) data.get(IMPORTED_PACKAGES))));
+        }
+    }
 }
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import java.util.*;
+
+/**
+ * Generation based tracker of changed and removed IDs. Every change gets the next generation number.
+ * Removed IDs are kept up to the defined limit, changes older than the oldest kept removal
+ * can be answered with the full state only.
+ *
+ * @author dmytro.pishchukhin
+ */
+public class ChangeTracker {
+    private final int maxRemoved;
+    private final Map<Long, Long> changed = new HashMap<Long, Long>();
+    private final LinkedHashMap<Long, Long> removed = new LinkedHashMap<Long, Long>();
+    private long generation;
+    private long horizon;
+
+    /**
+     * Create tracker
+     *
+     * @param maxRemoved maximum number of kept removed IDs
+     */
+    public ChangeTracker(int maxRemoved) {
+        this.maxRemoved = maxRemoved;
+        // generations of different tracker instances should not overlap
+        generation = System.currentTimeMillis();
+        horizon = generation;
+    }
+
+    /**
+     * Get current generation
+     *
+     * @return current generation
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Mark ID as changed
+     *
+     * @param id changed ID
+     * @return new generation
+     */
+    public synchronized long changed(long id) {
+        generation++;
+        changed.put(id, generation);
+        removed.remove(id);
+        return generation;
+    }
+
+    /**
+     * Mark ID as removed
+     *
+     * @param id removed ID
+     * @return new generation
+     */
+    public synchronized long removed(long id) {
+        generation++;
+        changed.remove(id);
+        removed.remove(id);
+        removed.put(id, generation);
+        if (removed.size() > maxRemoved) {
+            Iterator<Map.Entry<Long, Long>> iterator = removed.entrySet().iterator();
+            horizon = iterator.next().getValue();
+            iterator.remove();
+        }
+        return generation;
+    }
+
+    /**
+     * Get changes after generation
+     *
+     * @param since generation known by client
+     * @return changes after generation
+     */
+    public synchronized Changes getChangesSince(long since) {
+        if (since < horizon || since > generation) {
+            return new Changes(true, Collections.<Long>emptySet(), new long[0]);
+        }
+        Set<Long> changedIds = new HashSet<Long>();
+        for (Map.Entry<Long, Long> entry : changed.entrySet()) {
+            if (entry.getValue() > since) {
+                changedIds.add(entry.getKey());
+            }
+        }
+        List<Long> removedIds = new ArrayList<Long>();
+        for (Map.Entry<Long, Long> entry : removed.entrySet()) {
+            if (entry.getValue() > since) {
+                removedIds.add(entry.getKey());
+            }
+        }
+        long[] removedArray = new long[removedIds.size()];
+        for (int i = 0; i < removedArray.length; i++) {
+            removedArray[i] = removedIds.get(i);
+        }
+        return new Changes(false, changedIds, removedArray);
+    }
+
+    /**
+     * Changes after a generation
+     */
+    public static class Changes {
+        private final boolean full;
+        private final Set<Long> changed;
+        private final long[] removed;
+
+        private Changes(boolean full, Set<Long> changed, long[] removed) {
+            this.full = full;
+            this.changed = changed;
+            this.removed = removed;
+        }
+
+        /**
+         * @return <code>true</code> if changes are unknown and the full state has to be returned
+         */
+        public boolean isFull() {
+            return full;
+        }
+
+        /**
+         * @return changed IDs
+         */
+        public Set<Long> getChanged() {
+            return changed;
+        }
+
+        /**
+         * @return removed IDs
+         */
+        public long[] getRemoved() {
+            return removed;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Immutable bundle dependency graph. Bundle IDs are mapped to int indexes and edges are kept in
+ * compressed sparse row arrays: for node <code>i</code> its neighbours are
+ * <code>targets[offsets[i]]</code> .. <code>targets[offsets[i + 1] - 1]</code>.
+ * <p/>
+ * A dependency edge links a dependent bundle with a bundle it depends on (imported package or required bundle).
+ * An attachment edge links a fragment with its host: the fragment depends on the host and both are
+ * refreshed together.
+ *
+ * @author dmytro.pishchukhin
+ */
+public class DependencyGraph {
+    private final long[] bundleIds;
+    private final int[] dependencyOffsets;
+    private final int[] dependencyTargets;
+    private final int[] dependentOffsets;
+    private final int[] dependentTargets;
+    private final int[] attachmentOffsets;
+    private final int[] attachmentTargets;
+
+    /**
+     * Create graph
+     *
+     * @param bundleIds    IDs of graph bundles
+     * @param dependencies dependency edges as {dependent ID, dependency ID} pairs
+     * @param attachments  attachment edges as {fragment ID, host ID} pairs
+     */
+    public DependencyGraph(long[] bundleIds, long[][] dependencies, long[][] attachments) {
+        this.bundleIds = bundleIds.clone();
+        Arrays.sort(this.bundleIds);
+        int[] from = new int[dependencies.length + attachments.length];
+        int[] to = new int[from.length];
+        int edges = 0;
+        for (long[] edge : dependencies) {
+            edges = addEdge(edge, from, to, edges);
+        }
+        for (long[] edge : attachments) {
+            edges = addEdge(edge, from, to, edges);
+        }
+        int n = this.bundleIds.length;
+        dependencyOffsets = new int[n + 1];
+        dependencyTargets = new int[edges];
+        fill(from, to, edges, dependencyOffsets, dependencyTargets);
+        dependentOffsets = new int[n + 1];
+        dependentTargets = new int[edges];
+        fill(to, from, edges, dependentOffsets, dependentTargets);
+
+        // attachments are followed in both directions
+        int[] attachmentFrom = new int[attachments.length * 2];
+        int[] attachmentTo = new int[attachmentFrom.length];
+        int attachmentEdges = 0;
+        for (long[] edge : attachments) {
+            int fragment = indexOf(edge[0]);
+            int host = indexOf(edge[1]);
+            if (fragment >= 0 && host >= 0 && fragment != host) {
+                attachmentFrom[attachmentEdges] = fragment;
+                attachmentTo[attachmentEdges++] = host;
+                attachmentFrom[attachmentEdges] = host;
+                attachmentTo[attachmentEdges++] = fragment;
+            }
+        }
+        attachmentOffsets = new int[n + 1];
+        attachmentTargets = new int[attachmentEdges];
+        fill(attachmentFrom, attachmentTo, attachmentEdges, attachmentOffsets, attachmentTargets);
+    }
+
+    /**
+     * Check if bundle is in graph
+     *
+     * @param bundleId bundle ID
+     * @return <code>true</code> if graph contains bundle
+     */
+    public boolean contains(long bundleId) {
+        return indexOf(bundleId) >= 0;
+    }
+
+    /**
+     * Get IDs of bundles the bundle transitively depends on
+     *
+     * @param bundleId bundle ID
+     * @return sorted bundle IDs without the bundle itself
+     */
+    public long[] getDependencies(long bundleId) {
+        return traverse(new long[]{bundleId}, false, dependencyOffsets, dependencyTargets, null, null);
+    }
+
+    /**
+     * Get IDs of bundles that transitively depend on the bundle
+     *
+     * @param bundleId bundle ID
+     * @return sorted bundle IDs without the bundle itself
+     */
+    public long[] getDependents(long bundleId) {
+        return traverse(new long[]{bundleId}, false, dependentOffsets, dependentTargets, null, null);
+    }
+
+    /**
+     * Get IDs of bundles that are refreshed together with the bundles: the bundles, their transitive
+     * dependents and attached fragments and hosts
+     *
+     * @param bundleIds bundle IDs
+     * @return sorted bundle IDs including the bundles itself
+     */
+    public long[] getRefreshClosure(long[] bundleIds) {
+        return traverse(bundleIds, true, dependentOffsets, dependentTargets, attachmentOffsets, attachmentTargets);
+    }
+
+    private long[] traverse(long[] roots, boolean includeRoots, int[] offsets, int[] targets,
+                            int[] extraOffsets, int[] extraTargets) {
+        BitSet visited = new BitSet(bundleIds.length);
+        int[] queue = new int[bundleIds.length];
+        int head = 0;
+        int tail = 0;
+        long[] unknownRoots = new long[roots.length];
+        int unknown = 0;
+        for (long root : roots) {
+            int index = indexOf(root);
+            if (index < 0) {
+                unknownRoots[unknown++] = root;
+            } else if (!visited.get(index)) {
+                visited.set(index);
+                queue[tail++] = index;
+            }
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+                if (!visited.get(targets[i])) {
+                    visited.set(targets[i]);
+                    queue[tail++] = targets[i];
+                }
+            }
+            if (extraOffsets != null) {
+                for (int i = extraOffsets[node]; i < extraOffsets[node + 1]; i++) {
+                    if (!visited.get(extraTargets[i])) {
+                        visited.set(extraTargets[i]);
+                        queue[tail++] = extraTargets[i];
+                    }
+                }
+            }
+        }
+        if (!includeRoots) {
+            for (long root : roots) {
+                int index = indexOf(root);
+                if (index >= 0) {
+                    visited.clear(index);
+                }
+            }
+            unknown = 0;
+        }
+        long[] result = new long[visited.cardinality() + unknown];
+        int count = 0;
+        for (int i = visited.nextSetBit(0); i >= 0; i = visited.nextSetBit(i + 1)) {
+            result[count++] = bundleIds[i];
+        }
+        System.arraycopy(unknownRoots, 0, result, count, unknown);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private int addEdge(long[] edge, int[] from, int[] to, int edges) {
+        int source = indexOf(edge[0]);
+        int target = indexOf(edge[1]);
+        if (source >= 0 && target >= 0 && source != target) {
+            from[edges] = source;
+            to[edges] = target;
+            return edges + 1;
+        }
+        return edges;
+    }
+
+    private static void fill(int[] from, int[] to, int edges, int[] offsets, int[] targets) {
+        for (int i = 0; i < edges; i++) {
+            offsets[from[i] + 1]++;
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+        int[] positions = offsets.clone();
+        for (int i = 0; i < edges; i++) {
+            targets[positions[from[i]]++] = to[i];
+        }
+    }
+
+    private int indexOf(long bundleId) {
+        int index = Arrays.binarySearch(bundleIds, bundleId);
+        return index >= 0 ? index : -1;
+    }
+}
@@ -18,27 +18,97 @@ package org.ops4j.pax.jmx.beans.framework;
 
 import org.ops4j.pax.jmx.Utils;
 import org.ops4j.pax.jmx.beans.AbstractMBean;
+import org.ops4j.pax.jmx.beans.LogVisitor;
+import org.ops4j.pax.jmx.framework.ExtendedFrameworkMBean;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleException;
 import org.osgi.jmx.framework.FrameworkMBean;
 import org.osgi.service.packageadmin.PackageAdmin;
 import org.osgi.service.startlevel.StartLevel;
 
-import javax.management.NotCompliantMBeanException;
+import javax.management.*;
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.TabularDataSupport;
 import java.io.IOException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * FrameworkMBean Implementation
+ * FrameworkMBean and ExtendedFrameworkMBean Implementation
  *
  * @author dmytro.pishchukhin
  */
-public class Framework extends AbstractMBean implements FrameworkMBean {
+public class Framework extends AbstractMBean implements ExtendedFrameworkMBean, NotificationBroadcaster {
+    /**
+     * System property with the maximum number of concurrent bundle downloads of batch operations from URLs
+     */
+    public static final String PREFETCH_THREADS_PROPS = "org.ops4j.pax.jmx.beans.framework.prefetch.threads";
+    /**
+     * System property with the maximum number of downloaded bundles that wait for install or update
+     */
+    public static final String PREFETCH_WINDOW_PROPS = "org.ops4j.pax.jmx.beans.framework.prefetch.window";
+    /**
+     * System property that enables parallel start of bundles by <code>startBundles</code>
+     */
+    public static final String START_PARALLEL_PROPS = "org.ops4j.pax.jmx.beans.framework.start.parallel";
+    /**
+     * System property with the maximum number of bundles that are started concurrently
+     */
+    public static final String START_PARALLEL_THREADS_PROPS = "org.ops4j.pax.jmx.beans.framework.start.parallel.threads";
+    /**
+     * System property with the maximum number of concurrently executed batch jobs
+     */
+    public static final String JOBS_THREADS_PROPS = "org.ops4j.pax.jmx.beans.framework.jobs.threads";
+
+    private static final int DEFAULT_PREFETCH_THREADS = 4;
+    private static final int DEFAULT_PREFETCH_WINDOW = 8;
+    /**
+     * By default jobs are executed one after another, like concurrent synchronous batch calls would be
+     */
+    private static final int DEFAULT_JOBS_THREADS = 1;
+    /**
+     * Maximum number of kept batch jobs. Oldest finished jobs are forgotten first, new jobs are rejected
+     * if all kept jobs are unfinished
+     */
+    private static final int MAX_JOBS = 100;
+
+    private NotificationBroadcasterSupport nbs;
+    private MBeanNotificationInfo[] notificationInfos;
+
+    private long sequenceNumber = 0;
+
+    /**
+     * Bounded pool for bundle downloads. Created on first batch operation from URLs
+     */
+    private ExecutorService prefetchExecutor;
+    /**
+     * Bounded pool for parallel bundles start. Created on first parallel start
+     */
+    private ExecutorService startExecutor;
+    /**
+     * Batch jobs by job ID in the order of submission
+     */
+    private final Map<Long, BatchJob> jobs = new LinkedHashMap<Long, BatchJob>();
+    private final AtomicLong jobIds = new AtomicLong();
+    /**
+     * Pool for batch jobs. Created on first asynchronous batch operation
+     */
+    private ExecutorService jobsExecutor;
+
     public Framework() throws NotCompliantMBeanException {
-        super(FrameworkMBean.class);
+        super(ExtendedFrameworkMBean.class);
+        nbs = new NotificationBroadcasterSupport();
     }
 
     public int getFrameworkStartLevel() throws IOException {
@@ -147,17 +217,22 @@ public class Framework extends AbstractMBean implements FrameworkMBean {
                 }
                 remainingLocations.addAll(Arrays.asList(locations));
 
-                for (int i = 0; remainingLocations.size() > 0; i++) {
-                    String location = remainingLocations.remove(0);
-                    try {
-                        Bundle bundle = visitor.installBundle(location, new URL(urls[i]).openStream());
-                        completedBundles.add(bundle.getBundleId());
-                    } catch (Exception e) {
-                        isSuccess = false;
-                        errorBundleLocation = location;
-                        errorDetails = e.getMessage();
-                        break;
+                BundlePrefetcher prefetcher = createPrefetcher(urls);
+                try {
+                    while (remainingLocations.size() > 0) {
+                        String location = remainingLocations.remove(0);
+                        try {
+                            Bundle bundle = visitor.installBundle(location, prefetcher.next());
+                            completedBundles.add(bundle.getBundleId());
+                        } catch (Exception e) {
+                            isSuccess = false;
+                            errorBundleLocation = location;
+                            errorDetails = e.getMessage();
+                            break;
+                        }
                     }
+                } finally {
+                    prefetcher.close();
                 }
             }
             Map<String, Object> values = new HashMap<String, Object>();
@@ -220,6 +295,70 @@ public class Framework extends AbstractMBean implements FrameworkMBean {
         }
     }
 
+    public CompositeData previewRefreshBundles(long[] bundleIdentifiers) throws IOException {
+        try {
+            if (bundleIdentifiers == null) {
+                throw new IllegalArgumentException("Bundle IDs are not defined");
+            }
+            for (long bundleIdentifier : bundleIdentifiers) {
+                if (visitor.getBundle(bundleIdentifier) == null) {
+                    throw new IllegalArgumentException("Bundle ID is wrong: " + bundleIdentifier);
+                }
+            }
+            PackageAdmin packageAdmin = visitor.getPackageAdmin();
+            if (packageAdmin == null) {
+                throw new IOException("PackageAdmin is not available");
+            }
+            StartLevel startLevel = visitor.getStartLevel();
+            if (startLevel == null) {
+                throw new IOException("StartLevel is not available");
+            }
+            long[] refreshedBundles = BundleDependencyGraph.createGraph(visitor.getBundles(), packageAdmin)
+                    .getRefreshClosure(bundleIdentifiers);
+            List<Long> restartedBundles = new ArrayList<Long>();
+            SortedMap<Integer, int[]> levels = new TreeMap<Integer, int[]>();
+            for (long bundleIdentifier : refreshedBundles) {
+                Bundle bundle = visitor.getBundle(bundleIdentifier);
+                if (bundle == null) {
+                    continue;
+                }
+                int level = startLevel.getBundleStartLevel(bundle);
+                int[] counts = levels.get(level);
+                if (counts == null) {
+                    counts = new int[2];
+                    levels.put(level, counts);
+                }
+                counts[0]++;
+                if (bundle.getState() == Bundle.ACTIVE || bundle.getState() == Bundle.STARTING) {
+                    restartedBundles.add(bundleIdentifier);
+                    counts[1]++;
+                }
+            }
+            TabularDataSupport levelsData = new TabularDataSupport(START_LEVELS_IMPACT_TYPE);
+            for (Map.Entry<Integer, int[]> entry : levels.entrySet()) {
+                Map<String, Object> values = new HashMap<String, Object>();
+                values.put(START_LEVEL, entry.getKey());
+                values.put(REFRESHED_COUNT, entry.getValue()[0]);
+                values.put(RESTARTED_COUNT, entry.getValue()[1]);
+                levelsData.put(new CompositeDataSupport(START_LEVEL_IMPACT_TYPE, values));
+            }
+            Map<String, Object> values = new HashMap<String, Object>();
+            values.put(REFRESHED_BUNDLES, Utils.toLongArray(refreshedBundles));
+            values.put(RESTARTED_BUNDLES, restartedBundles.toArray(new Long[restartedBundles.size()]));
+            values.put(START_LEVELS, levelsData);
+            return new CompositeDataSupport(REFRESH_IMPACT_TYPE, values);
+        } catch (IllegalArgumentException e) {
+            logVisitor.warning("previewRefreshBundles error", e);
+            throw e;
+        } catch (IOException e) {
+            logVisitor.warning("previewRefreshBundles error", e);
+            throw e;
+        } catch (Exception e) {
+            logVisitor.warning("previewRefreshBundles error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
     public boolean resolveBundle(long bundleIdentifier) throws IOException {
         try {
             Bundle bundle = visitor.getBundle(bundleIdentifier);
@@ -443,6 +582,14 @@ public class Framework extends AbstractMBean implements FrameworkMBean {
                 bundles.addAll(Arrays.asList(Utils.toLongArray(bundleIdentifiers)));
             }
 
+            if (bundles.size() > 1 && Boolean.valueOf(visitor.getProperty(START_PARALLEL_PROPS))) {
+                PackageAdmin packageAdmin = visitor.getPackageAdmin();
+                StartLevel startLevel = visitor.getStartLevel();
+                if (packageAdmin != null && startLevel != null) {
+                    return startBundlesInParallel(bundles, packageAdmin, startLevel);
+                }
+            }
+
             Iterator<Long> bundleIterator = bundles.iterator();
             while (bundleIterator.hasNext()) {
                 Long bundleId = bundleIterator.next();
@@ -452,9 +599,10 @@ public class Framework extends AbstractMBean implements FrameworkMBean {
                     if (bundle == null) {
                         throw new IllegalArgumentException("Bundle ID is wrong: " + bundleId);
                     }
-                    bundle.update();
+                    bundle.start();
                     completedBundles.add(bundleId);
-                } catch (BundleException e) {
+                } catch (Exception e) {
+                    // wrong IDs and bundles in a wrong state are reported like in the parallel mode
                     logVisitor.warning("Bundle start error", e);
                     isSuccess = false;
                     errorBundleId = bundleId;
@@ -714,22 +862,27 @@ public class Framework extends AbstractMBean implements FrameworkMBean {
                 }
                 bundleIds.addAll(Arrays.asList(Utils.toLongArray(bundleIdentifiers)));
 
-                for (int i = 0; bundleIds.size() > 0; i++) {
-                    long bundleId = bundleIds.remove(0);
-                    try {
-                        Bundle bundle = visitor.getBundle(bundleId);
-                        if (bundle == null) {
-                            throw new IllegalArgumentException("Bundle ID is wrong: " + bundleId);
+                BundlePrefetcher prefetcher = createPrefetcher(urls);
+                try {
+                    while (bundleIds.size() > 0) {
+                        long bundleId = bundleIds.remove(0);
+                        try {
+                            Bundle bundle = visitor.getBundle(bundleId);
+                            if (bundle == null) {
+                                throw new IllegalArgumentException("Bundle ID is wrong: " + bundleId);
+                            }
+                            bundle.update(prefetcher.next());
+                            completedBundles.add(bundleId);
+                        } catch (Exception e) {
+                            logVisitor.warning("Bundle update from URL error", e);
+                            isSuccess = false;
+                            errorBundleId = bundleId;
+                            errorDetails = e.getMessage();
+                            break;
                         }
-                        bundle.update(new URL(urls[i]).openStream());
-                        completedBundles.add(bundleId);
-                    } catch (Exception e) {
-                        logVisitor.warning("Bundle update from URL error", e);
-                        isSuccess = false;
-                        errorBundleId = bundleId;
-                        errorDetails = e.getMessage();
-                        break;
                     }
+                } finally {
+                    prefetcher.close();
                 }
             }
             Map<String, Object> values = new HashMap<String, Object>();
@@ -756,4 +909,506 @@ public class Framework extends AbstractMBean implements FrameworkMBean {
             throw new IOException(e.getMessage());
         }
     }
+
+    public long installBundlesAsync(String[] locations) throws IOException {
+        return submitJob(new BatchJob("installBundles", BATCH_INSTALL_JOB_TYPE, locations) {
+            @Override
+            long process(Object key) throws Exception {
+                return visitor.installBundle((String) key).getBundleId();
+            }
+        });
+    }
+
+    public long startBundlesAsync(long[] bundleIdentifiers) throws IOException {
+        return submitJob(new BatchJob("startBundles", BATCH_ACTION_JOB_TYPE, toKeys(bundleIdentifiers)) {
+            @Override
+            long process(Object key) throws Exception {
+                getBundle((Long) key).start();
+                return (Long) key;
+            }
+        });
+    }
+
+    public long stopBundlesAsync(long[] bundleIdentifiers) throws IOException {
+        return submitJob(new BatchJob("stopBundles", BATCH_ACTION_JOB_TYPE, toKeys(bundleIdentifiers)) {
+            @Override
+            long process(Object key) throws Exception {
+                getBundle((Long) key).stop();
+                return (Long) key;
+            }
+        });
+    }
+
+    public long updateBundlesAsync(long[] bundleIdentifiers) throws IOException {
+        return submitJob(new BatchJob("updateBundles", BATCH_ACTION_JOB_TYPE, toKeys(bundleIdentifiers)) {
+            @Override
+            long process(Object key) throws Exception {
+                getBundle((Long) key).update();
+                return (Long) key;
+            }
+        });
+    }
+
+    public long uninstallBundlesAsync(long[] bundleIdentifiers) throws IOException {
+        return submitJob(new BatchJob("uninstallBundles", BATCH_ACTION_JOB_TYPE, toKeys(bundleIdentifiers)) {
+            @Override
+            long process(Object key) throws Exception {
+                getBundle((Long) key).uninstall();
+                return (Long) key;
+            }
+        });
+    }
+
+    public CompositeData getJobStatus(long jobIdentifier) throws IOException {
+        try {
+            return getJob(jobIdentifier).getStatus();
+        } catch (IllegalArgumentException e) {
+            logVisitor.warning("getJobStatus error", e);
+            throw e;
+        } catch (Exception e) {
+            logVisitor.warning("getJobStatus error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public boolean cancelJob(long jobIdentifier) throws IOException {
+        try {
+            return getJob(jobIdentifier).cancel();
+        } catch (IllegalArgumentException e) {
+            logVisitor.warning("cancelJob error", e);
+            throw e;
+        } catch (Exception e) {
+            logVisitor.warning("cancelJob error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public long[] listJobs() throws IOException {
+        synchronized (jobs) {
+            long[] result = new long[jobs.size()];
+            int i = 0;
+            for (Long jobId : jobs.keySet()) {
+                result[i++] = jobId;
+            }
+            return result;
+        }
+    }
+
+    public void addNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) throws IllegalArgumentException {
+        nbs.addNotificationListener(listener, filter, handback);
+    }
+
+    public void removeNotificationListener(NotificationListener listener) throws ListenerNotFoundException {
+        nbs.removeNotificationListener(listener);
+    }
+
+    public synchronized MBeanNotificationInfo[] getNotificationInfo() {
+        if (notificationInfos == null) {
+            notificationInfos = new MBeanNotificationInfo[]{
+                    new MBeanNotificationInfo(new String[]{JOB_EVENT},
+                            Notification.class.getName(), JOB_EVENT)
+            };
+        }
+        return notificationInfos;
+    }
+
+    @Override
+    public void uninit() {
+        synchronized (this) {
+            if (prefetchExecutor != null) {
+                prefetchExecutor.shutdownNow();
+                prefetchExecutor = null;
+            }
+            if (startExecutor != null) {
+                startExecutor.shutdownNow();
+                startExecutor = null;
+            }
+            if (jobsExecutor != null) {
+                jobsExecutor.shutdownNow();
+                jobsExecutor = null;
+            }
+        }
+        synchronized (jobs) {
+            for (BatchJob job : jobs.values()) {
+                job.cancel();
+            }
+            jobs.clear();
+        }
+        super.uninit();
+    }
+
+    private long submitJob(BatchJob job) throws IOException {
+        try {
+            synchronized (jobs) {
+                if (jobs.size() >= MAX_JOBS && !evictFinishedJob()) {
+                    throw new IOException("Too many unfinished batch jobs: " + MAX_JOBS);
+                }
+                jobs.put(job.id, job);
+            }
+            sendJobNotification(job);
+            getJobsExecutor().execute(job);
+            return job.id;
+        } catch (Exception e) {
+            synchronized (jobs) {
+                jobs.remove(job.id);
+            }
+            logVisitor.warning(job.operation + "Async error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Forget the oldest finished job. Must be called with <code>jobs</code> lock held
+     *
+     * @return <code>true</code> if a job is forgotten
+     */
+    private boolean evictFinishedJob() {
+        Iterator<BatchJob> iterator = jobs.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isFinished()) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private BatchJob getJob(long jobIdentifier) {
+        BatchJob job;
+        synchronized (jobs) {
+            job = jobs.get(jobIdentifier);
+        }
+        if (job == null) {
+            throw new IllegalArgumentException("Job ID is wrong: " + jobIdentifier);
+        }
+        return job;
+    }
+
+    private Bundle getBundle(long bundleIdentifier) {
+        Bundle bundle = visitor.getBundle(bundleIdentifier);
+        if (bundle == null) {
+            throw new IllegalArgumentException("Bundle ID is wrong: " + bundleIdentifier);
+        }
+        return bundle;
+    }
+
+    private static Object[] toKeys(long[] bundleIdentifiers) {
+        return bundleIdentifiers != null ? Utils.toLongArray(bundleIdentifiers) : new Long[0];
+    }
+
+    private void sendJobNotification(BatchJob job) {
+        try {
+            CompositeData status = job.getStatus();
+            synchronized (nbs) {
+                Notification notification = new Notification(JOB_EVENT, this, ++sequenceNumber,
+                        System.currentTimeMillis());
+                notification.setUserData(status);
+                nbs.sendNotification(notification);
+            }
+        } catch (Exception e) {
+            warning("Unable to send batch job notification", e);
+        }
+    }
+
+    /**
+     * Log warning from a batch job. The job could outlive this MBean registration
+     */
+    private void warning(String message, Exception e) {
+        LogVisitor log = logVisitor;
+        if (log != null) {
+            log.warning(message, e);
+        }
+    }
+
+    private synchronized ExecutorService getJobsExecutor() {
+        if (jobsExecutor == null) {
+            int threads = getIntProperty(JOBS_THREADS_PROPS, DEFAULT_JOBS_THREADS);
+            jobsExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "pax-jmx-jobs-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return jobsExecutor;
+    }
+
+    /**
+     * Start bundles start level by start level in ascending order. Bundles of the same start level are started
+     * in waves: a bundle is started concurrently with the others of its wave after the bundles of the same start
+     * level it depends on are started. The batch stops after the wave with the first bundle in error.
+     * A wrong bundle ID is found before any bundle is started and is reported as the bundle in error.
+     */
+    private CompositeData startBundlesInParallel(List<Long> bundleIds, PackageAdmin packageAdmin,
+                                                 StartLevel startLevel) throws Exception {
+        SortedMap<Integer, List<Bundle>> levels = new TreeMap<Integer, List<Bundle>>();
+        for (Long bundleId : new LinkedHashSet<Long>(bundleIds)) {
+            try {
+                Bundle bundle = visitor.getBundle(bundleId);
+                if (bundle == null) {
+                    throw new IllegalArgumentException("Bundle ID is wrong: " + bundleId);
+                }
+                int level = startLevel.getBundleStartLevel(bundle);
+                List<Bundle> levelBundles = levels.get(level);
+                if (levelBundles == null) {
+                    levelBundles = new ArrayList<Bundle>();
+                    levels.put(level, levelBundles);
+                }
+                levelBundles.add(bundle);
+            } catch (Exception e) {
+                logVisitor.warning("Bundle start error", e);
+                List<Long> remainingBundles = new ArrayList<Long>(bundleIds);
+                remainingBundles.removeAll(Collections.singleton(bundleId));
+                return createBatchActionResult(remainingBundles, Collections.<Long>emptyList(), bundleId,
+                        e.getMessage());
+            }
+        }
+        DependencyGraph graph = BundleDependencyGraph.createGraph(visitor.getBundles(), packageAdmin);
+        ExecutorService executor = getStartExecutor();
+
+        List<Long> remainingBundles = new ArrayList<Long>(bundleIds);
+        List<Long> completedBundles = new ArrayList<Long>();
+        Long errorBundleId = null;
+        String errorDetails = null;
+
+        for (List<Bundle> pending : levels.values()) {
+            Set<Long> pendingIds = new HashSet<Long>();
+            for (Bundle bundle : pending) {
+                pendingIds.add(bundle.getBundleId());
+            }
+            while (!pending.isEmpty() && errorBundleId == null) {
+                List<Bundle> wave = new ArrayList<Bundle>();
+                for (Bundle bundle : pending) {
+                    if (!dependsOn(graph, bundle.getBundleId(), pendingIds)) {
+                        wave.add(bundle);
+                    }
+                }
+                if (wave.isEmpty()) {
+                    // dependency cycle: start the first bundle alone
+                    wave.add(pending.get(0));
+                }
+                List<Future<?>> futures = new ArrayList<Future<?>>();
+                for (final Bundle bundle : wave) {
+                    futures.add(executor.submit(new Callable<Object>() {
+                        public Object call() throws Exception {
+                            bundle.start();
+                            return null;
+                        }
+                    }));
+                }
+                for (int i = 0; i < wave.size(); i++) {
+                    Long bundleId = wave.get(i).getBundleId();
+                    try {
+                        futures.get(i).get();
+                        completedBundles.add(bundleId);
+                        remainingBundles.removeAll(Collections.singleton(bundleId));
+                    } catch (ExecutionException e) {
+                        logVisitor.warning("Bundle start error", e.getCause());
+                        if (errorBundleId == null) {
+                            errorBundleId = bundleId;
+                            errorDetails = e.getCause().getMessage();
+                            remainingBundles.removeAll(Collections.singleton(bundleId));
+                        }
+                    }
+                }
+                pending.removeAll(wave);
+                for (Bundle bundle : wave) {
+                    pendingIds.remove(bundle.getBundleId());
+                }
+            }
+        }
+
+        return createBatchActionResult(remainingBundles, completedBundles, errorBundleId, errorDetails);
+    }
+
+    private static CompositeData createBatchActionResult(List<Long> remainingBundles, List<Long> completedBundles,
+                                                         Long errorBundleId, String errorDetails)
+            throws OpenDataException {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put(REMAINING, remainingBundles.toArray(new Long[remainingBundles.size()]));
+        values.put(COMPLETED, completedBundles.toArray(new Long[completedBundles.size()]));
+        values.put(BUNDLE_IN_ERROR, errorBundleId != null ? errorBundleId : 0);
+        values.put(ERROR, errorDetails);
+        values.put(SUCCESS, errorBundleId == null);
+        return new CompositeDataSupport(BATCH_ACTION_RESULT_TYPE, values);
+    }
+
+    private static boolean dependsOn(DependencyGraph graph, long bundleId, Set<Long> bundleIds) {
+        for (long dependency : graph.getDependencies(bundleId)) {
+            if (bundleIds.contains(dependency)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized ExecutorService getStartExecutor() {
+        if (startExecutor == null) {
+            int threads = getIntProperty(START_PARALLEL_THREADS_PROPS, Runtime.getRuntime().availableProcessors());
+            startExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "pax-jmx-start-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return startExecutor;
+    }
+
+    private BundlePrefetcher createPrefetcher(String[] urls) {
+        return new BundlePrefetcher(urls, getPrefetchExecutor(),
+                getIntProperty(PREFETCH_WINDOW_PROPS, DEFAULT_PREFETCH_WINDOW), null);
+    }
+
+    private synchronized ExecutorService getPrefetchExecutor() {
+        if (prefetchExecutor == null) {
+            int threads = getIntProperty(PREFETCH_THREADS_PROPS, DEFAULT_PREFETCH_THREADS);
+            prefetchExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "pax-jmx-prefetch-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return prefetchExecutor;
+    }
+
+    private int getIntProperty(String name, int defaultValue) {
+        String value = visitor.getProperty(name);
+        if (value != null) {
+            try {
+                int result = Integer.parseInt(value.trim());
+                if (result > 0) {
+                    return result;
+                }
+            } catch (NumberFormatException e) {
+                logVisitor.warning("Property value is wrong: " + name, e);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Asynchronous batch job. Bundles are processed one after another, the job stops on the first bundle
+     * in error or when it is cancelled. A notification is sent on every job change.
+     */
+    private abstract class BatchJob implements Runnable {
+        private final long id = jobIds.incrementAndGet();
+        private final String operation;
+        private final CompositeType type;
+        private final Object[] keys;
+        private final List<Long> completedBundles = new ArrayList<Long>();
+        private int next;
+        private String state = JOB_QUEUED;
+        private Object errorKey;
+        private String errorDetails;
+
+        BatchJob(String operation, CompositeType type, Object[] keys) {
+            this.operation = operation;
+            this.type = type;
+            this.keys = keys != null ? keys : new Object[0];
+        }
+
+        /**
+         * Process bundle
+         *
+         * @param key bundle ID or location
+         * @return ID of processed bundle
+         * @throws Exception if bundle processing failed
+         */
+        abstract long process(Object key) throws Exception;
+
+        public void run() {
+            synchronized (this) {
+                if (!JOB_QUEUED.equals(state)) {
+                    return;
+                }
+                state = JOB_RUNNING;
+            }
+            sendJobNotification(this);
+            while (true) {
+                Object key;
+                synchronized (this) {
+                    if (!JOB_RUNNING.equals(state)) {
+                        break;
+                    }
+                    if (next >= keys.length) {
+                        state = JOB_COMPLETED;
+                        break;
+                    }
+                    key = keys[next++];
+                }
+                try {
+                    long bundleId = process(key);
+                    synchronized (this) {
+                        completedBundles.add(bundleId);
+                    }
+                } catch (Exception e) {
+                    warning(operation + " job error", e);
+                    synchronized (this) {
+                        // job could be cancelled while the bundle was processed
+                        if (JOB_RUNNING.equals(state)) {
+                            state = JOB_FAILED;
+                            errorKey = key;
+                            errorDetails = e.getMessage();
+                        }
+                    }
+                }
+                boolean running;
+                synchronized (this) {
+                    running = JOB_RUNNING.equals(state);
+                }
+                // final state is reported once after the loop
+                if (running) {
+                    sendJobNotification(this);
+                }
+            }
+            sendJobNotification(this);
+        }
+
+        boolean cancel() {
+            boolean queued;
+            synchronized (this) {
+                if (isFinished()) {
+                    return false;
+                }
+                queued = JOB_QUEUED.equals(state);
+                state = JOB_CANCELLED;
+            }
+            if (queued) {
+                // running job sends notification itself
+                sendJobNotification(this);
+            }
+            return true;
+        }
+
+        synchronized boolean isFinished() {
+            return !JOB_QUEUED.equals(state) && !JOB_RUNNING.equals(state);
+        }
+
+        synchronized CompositeData getStatus() throws OpenDataException {
+            boolean install = type == BATCH_INSTALL_JOB_TYPE;
+            Object[] remaining = install ? new String[keys.length - next] : new Long[keys.length - next];
+            System.arraycopy(keys, next, remaining, 0, remaining.length);
+            Map<String, Object> values = new HashMap<String, Object>();
+            values.put(JOB_ID, id);
+            values.put(OPERATION, operation);
+            values.put(JOB_STATE, state);
+            values.put(COMPLETED, completedBundles.toArray(new Long[completedBundles.size()]));
+            values.put(REMAINING, remaining);
+            values.put(BUNDLE_IN_ERROR, errorKey == null && !install ? Long.valueOf(0) : errorKey);
+            values.put(ERROR, errorDetails);
+            values.put(SUCCESS, !JOB_FAILED.equals(state));
+            return new CompositeDataSupport(type, values);
+        }
+    }
 }
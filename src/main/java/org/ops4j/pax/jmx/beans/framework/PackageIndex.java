@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Version;
+import org.osgi.service.packageadmin.ExportedPackage;
+
+import java.util.*;
+
+/**
+ * Index of exported packages by package name and version. <code>ExportedPackage</code> objects answer
+ * importing bundles and removal pending state live, so the index is valid until the set of exported packages
+ * is changed. Packages are also kept sorted by name and version for prefix queries.
+ *
+ * @author dmytro.pishchukhin
+ */
+public class PackageIndex {
+    private static final ExportedPackage[] EMPTY = new ExportedPackage[0];
+
+    private final Map<String, ExportedPackage[]> packages = new HashMap<String, ExportedPackage[]>();
+    private final SortedMap<String, SortedMap<Version, ExportedPackage[]>> sortedPackages =
+            new TreeMap<String, SortedMap<Version, ExportedPackage[]>>();
+
+    /**
+     * Create index
+     *
+     * @param exportedPackages all exported packages
+     */
+    public PackageIndex(ExportedPackage[] exportedPackages) {
+        Map<String, List<ExportedPackage>> grouped = new HashMap<String, List<ExportedPackage>>();
+        if (exportedPackages != null) {
+            for (ExportedPackage exportedPackage : exportedPackages) {
+                String key = createKey(exportedPackage.getName(), exportedPackage.getVersion());
+                List<ExportedPackage> list = grouped.get(key);
+                if (list == null) {
+                    list = new ArrayList<ExportedPackage>(1);
+                    grouped.put(key, list);
+                }
+                list.add(exportedPackage);
+            }
+        }
+        for (Map.Entry<String, List<ExportedPackage>> entry : grouped.entrySet()) {
+            ExportedPackage[] group = entry.getValue().toArray(new ExportedPackage[entry.getValue().size()]);
+            packages.put(entry.getKey(), group);
+            SortedMap<Version, ExportedPackage[]> versions = sortedPackages.get(group[0].getName());
+            if (versions == null) {
+                versions = new TreeMap<Version, ExportedPackage[]>();
+                sortedPackages.put(group[0].getName(), versions);
+            }
+            versions.put(group[0].getVersion(), group);
+        }
+    }
+
+    /**
+     * Get all packages grouped by name and version
+     *
+     * @return groups of packages with the same name and version, sorted by name and version
+     */
+    public List<ExportedPackage[]> getPackages() {
+        return findPackages(null);
+    }
+
+    /**
+     * Get packages with name prefix grouped by name and version
+     *
+     * @param namePrefix package name prefix or <code>null</code> for all packages
+     * @return groups of packages with the same name and version, sorted by name and version
+     */
+    public List<ExportedPackage[]> findPackages(String namePrefix) {
+        SortedMap<String, SortedMap<Version, ExportedPackage[]>> names = sortedPackages;
+        if (namePrefix != null && namePrefix.length() > 0) {
+            names = sortedPackages.subMap(namePrefix, namePrefix + Character.MAX_VALUE);
+        }
+        List<ExportedPackage[]> result = new ArrayList<ExportedPackage[]>();
+        for (SortedMap<Version, ExportedPackage[]> versions : names.values()) {
+            result.addAll(versions.values());
+        }
+        return result;
+    }
+
+    /**
+     * Get packages with name and version
+     *
+     * @param name    package name
+     * @param version package version
+     * @return non-<code>null</code> array of packages exported by different bundles
+     */
+    public ExportedPackage[] getPackages(String name, Version version) {
+        ExportedPackage[] result = packages.get(createKey(name, version));
+        return result != null ? result : EMPTY;
+    }
+
+    /**
+     * Get package with name and version
+     *
+     * @param name            package name
+     * @param version         package version
+     * @param exportingBundle exporting bundle or <code>null</code> for any bundle
+     * @return package or <code>null</code>
+     */
+    public ExportedPackage getPackage(String name, Version version, Bundle exportingBundle) {
+        for (ExportedPackage exportedPackage : getPackages(name, version)) {
+            if (exportingBundle == null || exportingBundle.equals(exportedPackage.getExportingBundle())) {
+                return exportedPackage;
+            }
+        }
+        return null;
+    }
+
+    private static String createKey(String name, Version version) {
+        return name + ";" + version.toString();
+    }
+}
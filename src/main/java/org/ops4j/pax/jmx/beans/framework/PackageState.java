@@ -18,27 +18,44 @@ package org.ops4j.pax.jmx.beans.framework;
 
 import org.ops4j.pax.jmx.Utils;
 import org.ops4j.pax.jmx.beans.AbstractMBean;
+import org.ops4j.pax.jmx.framework.ExtendedPackageStateMBean;
 import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
 import org.osgi.framework.Version;
 import org.osgi.jmx.framework.PackageStateMBean;
 import org.osgi.service.packageadmin.ExportedPackage;
 import org.osgi.service.packageadmin.PackageAdmin;
 
 import javax.management.NotCompliantMBeanException;
+import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.OpenDataException;
 import javax.management.openmbean.TabularData;
 import javax.management.openmbean.TabularDataSupport;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * PackageStateMBean Implementation
+ * PackageStateMBean and ExtendedPackageStateMBean Implementation
  *
  * @author dmytro.pishchukhin
  */
-public class PackageState extends AbstractMBean implements PackageStateMBean {
+public class PackageState extends AbstractMBean implements ExtendedPackageStateMBean, FrameworkListener, BundleListener {
+    /**
+     * Exported packages index. It is dropped when exported packages are changed and rebuilt on demand
+     */
+    private volatile PackageIndex index;
+    /**
+     * Counter of exported packages changes
+     */
+    private final AtomicLong packagesStamp = new AtomicLong();
+
     public PackageState() throws NotCompliantMBeanException {
-        super(PackageStateMBean.class);
+        super(ExtendedPackageStateMBean.class);
     }
 
     public long[] getExportingBundles(String packageName, String version) throws IOException {
@@ -48,8 +65,7 @@ public class PackageState extends AbstractMBean implements PackageStateMBean {
                 throw new IOException("PackageAdmin is not available");
             }
             Version packageVersion = new Version(version);
-            ExportedPackage[] packages = Utils.findPackages(packageAdmin.getExportedPackages((Bundle) null),
-                    packageName, packageVersion);
+            ExportedPackage[] packages = getIndex(packageAdmin).getPackages(packageName, packageVersion);
             if (packages.length == 0) {
                 throw new IllegalArgumentException("Package name/vesion are wrong: " + packageName + ", " + version);
             }
@@ -82,7 +98,7 @@ public class PackageState extends AbstractMBean implements PackageStateMBean {
             }
             Version packageVersion = new Version(version);
 
-            ExportedPackage foundPackage = Utils.findPackage(packageAdmin.getExportedPackages(bundle), packageName, packageVersion);
+            ExportedPackage foundPackage = getIndex(packageAdmin).getPackage(packageName, packageVersion, bundle);
             if (foundPackage == null) {
                 throw new IllegalArgumentException("Package name/vesion are wrong: " + packageName + ", " + version);
             }
@@ -106,37 +122,53 @@ public class PackageState extends AbstractMBean implements PackageStateMBean {
                 throw new IOException("PackageAdmin is not available");
             }
             TabularDataSupport dataSupport = new TabularDataSupport(PACKAGES_TYPE);
-            ExportedPackage[] exportedPackages = packageAdmin.getExportedPackages((Bundle) null);
-            Map<String, PackageInfo> packages = new HashMap<String, PackageInfo>();
-            if (exportedPackages != null) {
-                for (ExportedPackage exportedPackage : exportedPackages) {
-                    String key = exportedPackage.getName() + ";" + exportedPackage.getVersion().toString();
-                    PackageInfo packageInfo = packages.get(key);
-                    if (packageInfo == null) {
-                        packageInfo = new PackageInfo(exportedPackage.getName(), exportedPackage.getVersion(), exportedPackage.isRemovalPending());
-                        packages.put(key, packageInfo);
-                    }
-                    Bundle exportingBundle = exportedPackage.getExportingBundle();
-                    if (exportingBundle != null) {
-                        packageInfo.exportingBundles.add(exportingBundle);
-                    }
-                    Bundle[] importingBundles = exportedPackage.getImportingBundles();
-                    if (importingBundles != null) {
-                        packageInfo.importingBundles.addAll(Arrays.asList(importingBundles));
+            for (ExportedPackage[] packages : getIndex(packageAdmin).getPackages()) {
+                dataSupport.put(getPackageData(new PackageInfo(packages)));
+            }
+            return dataSupport;
+        } catch (IOException e) {
+            logVisitor.warning("listPackages error", e);
+            throw e;
+        } catch (Exception e) {
+            logVisitor.warning("listPackages error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public TabularData listPackages(String namePrefix, String versionRange, int offset, int limit) throws IOException {
+        try {
+            if (offset < 0) {
+                throw new IllegalArgumentException("Offset is wrong: " + offset);
+            }
+            if (limit <= 0) {
+                throw new IllegalArgumentException("Limit is wrong: " + limit);
+            }
+            VersionRange range = null;
+            if (versionRange != null && versionRange.trim().length() > 0) {
+                range = new VersionRange(versionRange);
+            }
+            PackageAdmin packageAdmin = visitor.getPackageAdmin();
+            if (packageAdmin == null) {
+                throw new IOException("PackageAdmin is not available");
+            }
+            TabularDataSupport dataSupport = new TabularDataSupport(PACKAGES_TYPE);
+            int skipped = 0;
+            for (ExportedPackage[] packages : getIndex(packageAdmin).findPackages(namePrefix)) {
+                if (dataSupport.size() >= limit) {
+                    break;
+                }
+                if (range == null || range.includes(packages[0].getVersion())) {
+                    if (skipped < offset) {
+                        skipped++;
+                    } else {
+                        dataSupport.put(getPackageData(new PackageInfo(packages)));
                     }
                 }
             }
-            Collection<PackageInfo> packageInfos = packages.values();
-            for (PackageInfo packageInfo : packageInfos) {
-                Map<String, Object> values = new HashMap<String, Object>();
-                values.put(NAME, packageInfo.name);
-                values.put(VERSION, packageInfo.version.toString());
-                values.put(REMOVAL_PENDING, packageInfo.isRemovalPending);
-                values.put(EXPORTING_BUNDLES, Utils.toLongArray(Utils.getIds(packageInfo.exportingBundles.toArray(new Bundle[packageInfo.exportingBundles.size()]))));
-                values.put(IMPORTING_BUNDLES, Utils.toLongArray(Utils.getIds(packageInfo.importingBundles.toArray(new Bundle[packageInfo.importingBundles.size()]))));
-                dataSupport.put(new CompositeDataSupport(PACKAGE_TYPE, values));
-            }
             return dataSupport;
+        } catch (IllegalArgumentException e) {
+            logVisitor.warning("listPackages error", e);
+            throw e;
         } catch (IOException e) {
             logVisitor.warning("listPackages error", e);
             throw e;
@@ -146,6 +178,37 @@ public class PackageState extends AbstractMBean implements PackageStateMBean {
         }
     }
 
+    public TabularData listPackageConflicts() throws IOException {
+        try {
+            PackageAdmin packageAdmin = visitor.getPackageAdmin();
+            if (packageAdmin == null) {
+                throw new IOException("PackageAdmin is not available");
+            }
+            TabularDataSupport dataSupport = new TabularDataSupport(PACKAGES_TYPE);
+            // packages are sorted by name, so all versions of a package are checked together
+            List<PackageInfo> versions = new ArrayList<PackageInfo>();
+            boolean conflict = false;
+            for (ExportedPackage[] packages : getIndex(packageAdmin).getPackages()) {
+                PackageInfo packageInfo = new PackageInfo(packages);
+                if (!versions.isEmpty() && !versions.get(0).name.equals(packageInfo.name)) {
+                    putConflict(dataSupport, versions, conflict);
+                    versions.clear();
+                    conflict = false;
+                }
+                versions.add(packageInfo);
+                conflict |= versions.size() > 1 || packageInfo.exportingBundles.size() > 1;
+            }
+            putConflict(dataSupport, versions, conflict);
+            return dataSupport;
+        } catch (IOException e) {
+            logVisitor.warning("listPackageConflicts error", e);
+            throw e;
+        } catch (Exception e) {
+            logVisitor.warning("listPackageConflicts error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
     public boolean isRemovalPending(String packageName, String version, long exportingBundle) throws IOException {
         try {
             Bundle bundle = visitor.getBundle(exportingBundle);
@@ -155,7 +218,7 @@ public class PackageState extends AbstractMBean implements PackageStateMBean {
             }
             Version packageVersion = new Version(version);
 
-            ExportedPackage foundPackage = Utils.findPackage(packageAdmin.getExportedPackages(bundle), packageName, packageVersion);
+            ExportedPackage foundPackage = getIndex(packageAdmin).getPackage(packageName, packageVersion, bundle);
             if (foundPackage == null) {
                 throw new IllegalArgumentException("Package name/vesion are wrong: " + packageName + ", " + version);
             }
@@ -172,6 +235,64 @@ public class PackageState extends AbstractMBean implements PackageStateMBean {
         }
     }
 
+    public void frameworkEvent(FrameworkEvent event) {
+        if (event.getType() == FrameworkEvent.PACKAGES_REFRESHED) {
+            packagesChanged();
+        }
+    }
+
+    public void bundleChanged(BundleEvent event) {
+        // resolved bundles export packages without packages refresh
+        if (event.getType() == BundleEvent.RESOLVED || event.getType() == BundleEvent.UNRESOLVED) {
+            packagesChanged();
+        }
+    }
+
+    @Override
+    public void uninit() {
+        index = null;
+        super.uninit();
+    }
+
+    private PackageIndex getIndex(PackageAdmin packageAdmin) {
+        PackageIndex packageIndex = index;
+        if (packageIndex == null) {
+            long stamp = packagesStamp.get();
+            packageIndex = new PackageIndex(packageAdmin.getExportedPackages((Bundle) null));
+            synchronized (this) {
+                if (packagesStamp.get() == stamp) {
+                    // packages were not changed while the index was built
+                    index = packageIndex;
+                }
+            }
+        }
+        return packageIndex;
+    }
+
+    private synchronized void packagesChanged() {
+        packagesStamp.incrementAndGet();
+        index = null;
+    }
+
+    private void putConflict(TabularDataSupport dataSupport, List<PackageInfo> versions, boolean conflict)
+            throws OpenDataException {
+        if (conflict) {
+            for (PackageInfo packageInfo : versions) {
+                dataSupport.put(getPackageData(packageInfo));
+            }
+        }
+    }
+
+    private CompositeData getPackageData(PackageInfo packageInfo) throws OpenDataException {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put(NAME, packageInfo.name);
+        values.put(VERSION, packageInfo.version.toString());
+        values.put(REMOVAL_PENDING, packageInfo.isRemovalPending);
+        values.put(EXPORTING_BUNDLES, Utils.toLongArray(Utils.getIds(packageInfo.exportingBundles.toArray(new Bundle[packageInfo.exportingBundles.size()]))));
+        values.put(IMPORTING_BUNDLES, Utils.toLongArray(Utils.getIds(packageInfo.importingBundles.toArray(new Bundle[packageInfo.importingBundles.size()]))));
+        return new CompositeDataSupport(PACKAGE_TYPE, values);
+    }
+
     private static class PackageInfo {
         Set<Bundle> exportingBundles = new HashSet<Bundle>();
         Set<Bundle> importingBundles = new HashSet<Bundle>();
@@ -179,10 +300,23 @@ public class PackageState extends AbstractMBean implements PackageStateMBean {
         String name;
         Version version;
 
-        private PackageInfo(String name, Version version, boolean removalPending) {
-            this.name = name;
-            this.version = version;
-            isRemovalPending = removalPending;
+        /**
+         * Aggregate packages with the same name and version
+         */
+        private PackageInfo(ExportedPackage[] packages) {
+            name = packages[0].getName();
+            version = packages[0].getVersion();
+            isRemovalPending = packages[0].isRemovalPending();
+            for (ExportedPackage exportedPackage : packages) {
+                Bundle exportingBundle = exportedPackage.getExportingBundle();
+                if (exportingBundle != null) {
+                    exportingBundles.add(exportingBundle);
+                }
+                Bundle[] bundles = exportedPackage.getImportingBundles();
+                if (bundles != null) {
+                    importingBundles.addAll(Arrays.asList(bundles));
+                }
+            }
         }
     }
 }
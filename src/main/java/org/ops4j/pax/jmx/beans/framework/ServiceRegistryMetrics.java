@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import org.ops4j.pax.jmx.beans.AbstractMBean;
+import org.ops4j.pax.jmx.framework.ServiceRegistryMetricsMBean;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceEvent;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * ServiceRegistryMetricsMBean Implementation. Service events are counted by {@link ServiceState}.
+ * Counters of a bundle are dropped when the bundle is uninstalled.
+ * Counting threads share the read lock, idle counters are removed under the write lock,
+ * so an event is never counted into removed counters.
+ *
+ * @author dmytro.pishchukhin
+ */
+public class ServiceRegistryMetrics extends AbstractMBean implements ServiceRegistryMetricsMBean, BundleListener {
+    private static final long MINUTE = 60 * 1000;
+    private static final long BUCKET_MILLIS = 10 * 1000;
+    private static final int BUCKETS = (int) (15 * MINUTE / BUCKET_MILLIS);
+
+    private final ConcurrentMap<String, EventCounters> objectClasses = new ConcurrentHashMap<String, EventCounters>();
+    private final ConcurrentMap<Long, EventCounters> bundles = new ConcurrentHashMap<Long, EventCounters>();
+    private final ReadWriteLock countersLock = new ReentrantReadWriteLock();
+
+    public ServiceRegistryMetrics() throws NotCompliantMBeanException {
+        super(ServiceRegistryMetricsMBean.class);
+    }
+
+    public TabularData listObjectClassMetrics() throws IOException {
+        try {
+            return getMetrics(objectClasses, OBJECT_CLASS_METRICS_TYPE, OBJECT_CLASS,
+                    new TabularDataSupport(OBJECT_CLASSES_METRICS_TYPE));
+        } catch (Exception e) {
+            logVisitor.warning("listObjectClassMetrics error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public TabularData listBundleMetrics() throws IOException {
+        try {
+            return getMetrics(bundles, BUNDLE_METRICS_TYPE, BUNDLE_IDENTIFIER,
+                    new TabularDataSupport(BUNDLES_METRICS_TYPE));
+        } catch (Exception e) {
+            logVisitor.warning("listBundleMetrics error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Count service event
+     *
+     * @param event service event
+     */
+    public void count(ServiceEvent event) {
+        long now = System.currentTimeMillis();
+        String[] interfaces = (String[]) event.getServiceReference().getProperty(Constants.OBJECTCLASS);
+        Bundle bundle = event.getServiceReference().getBundle();
+        countersLock.readLock().lock();
+        try {
+            if (interfaces != null) {
+                for (String objectClass : interfaces) {
+                    getCounters(objectClasses, objectClass).increment(event.getType(), now);
+                }
+            }
+            if (bundle != null) {
+                getCounters(bundles, bundle.getBundleId()).increment(event.getType(), now);
+            }
+        } finally {
+            countersLock.readLock().unlock();
+        }
+    }
+
+    public void bundleChanged(BundleEvent event) {
+        if (event.getType() == BundleEvent.UNINSTALLED) {
+            bundles.remove(event.getBundle().getBundleId());
+        }
+    }
+
+    @Override
+    public void uninit() {
+        objectClasses.clear();
+        bundles.clear();
+        super.uninit();
+    }
+
+    private static <K> EventCounters getCounters(ConcurrentMap<K, EventCounters> counters, K key) {
+        EventCounters result = counters.get(key);
+        if (result == null) {
+            EventCounters newCounters = new EventCounters();
+            result = counters.putIfAbsent(key, newCounters);
+            if (result == null) {
+                result = newCounters;
+            }
+        }
+        return result;
+    }
+
+    private <K> TabularData getMetrics(ConcurrentMap<K, EventCounters> counters, CompositeType type,
+                                       String keyName, TabularDataSupport dataSupport)
+            throws OpenDataException {
+        long now = System.currentTimeMillis();
+        List<K> idleKeys = new ArrayList<K>();
+        for (Map.Entry<K, EventCounters> entry : counters.entrySet()) {
+            EventCounters eventCounters = entry.getValue();
+            long registered = eventCounters.registered.getCount(now, 15 * MINUTE);
+            long modified = eventCounters.modified.getCount(now, 15 * MINUTE);
+            long unregistering = eventCounters.unregistering.getCount(now, 15 * MINUTE);
+            if (registered + modified + unregistering == 0) {
+                // no events in the longest window
+                idleKeys.add(entry.getKey());
+                continue;
+            }
+            Map<String, Object> values = new HashMap<String, Object>();
+            values.put(keyName, entry.getKey());
+            values.put(ONE_MINUTE_RATE, eventCounters.getRate(now, MINUTE));
+            values.put(FIVE_MINUTE_RATE, eventCounters.getRate(now, 5 * MINUTE));
+            values.put(FIFTEEN_MINUTE_RATE, eventCounters.getRate(now, 15 * MINUTE));
+            values.put(REGISTERED, registered);
+            values.put(MODIFIED, modified);
+            values.put(UNREGISTERING, unregistering);
+            dataSupport.put(new CompositeDataSupport(type, values));
+        }
+        if (!idleKeys.isEmpty()) {
+            removeIdleCounters(counters, idleKeys);
+        }
+        return dataSupport;
+    }
+
+    private <K> void removeIdleCounters(ConcurrentMap<K, EventCounters> counters, List<K> keys) {
+        countersLock.writeLock().lock();
+        try {
+            long now = System.currentTimeMillis();
+            for (K key : keys) {
+                EventCounters eventCounters = counters.get(key);
+                // events could be counted after the counters were read
+                if (eventCounters != null && eventCounters.getCount(now, 15 * MINUTE) == 0) {
+                    counters.remove(key);
+                }
+            }
+        } finally {
+            countersLock.writeLock().unlock();
+        }
+    }
+
+    private static class EventCounters {
+        final SlidingWindowCounter registered = new SlidingWindowCounter(BUCKET_MILLIS, BUCKETS);
+        final SlidingWindowCounter modified = new SlidingWindowCounter(BUCKET_MILLIS, BUCKETS);
+        final SlidingWindowCounter unregistering = new SlidingWindowCounter(BUCKET_MILLIS, BUCKETS);
+
+        void increment(int eventType, long now) {
+            switch (eventType) {
+                case ServiceEvent.REGISTERED:
+                    registered.increment(now);
+                    break;
+                case ServiceEvent.MODIFIED:
+                    modified.increment(now);
+                    break;
+                case ServiceEvent.UNREGISTERING:
+                    unregistering.increment(now);
+                    break;
+            }
+        }
+
+        long getCount(long now, long window) {
+            return registered.getCount(now, window) + modified.getCount(now, window)
+                    + unregistering.getCount(now, window);
+        }
+
+        /**
+         * Get events per minute. The window covers the completed buckets and the current one,
+         * so the events are divided by the covered time, not by the window width.
+         */
+        double getRate(long now, long window) {
+            return (double) getCount(now, window) * MINUTE / registered.getCoveredMillis(now, window);
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.ops4j.pax.jmx.beans.framework;
 
 import org.ops4j.pax.jmx.Utils;
 import org.ops4j.pax.jmx.beans.AbstractMBean;
+import org.ops4j.pax.jmx.framework.ExtendedServiceStateMBean;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceListener;
@@ -26,31 +27,83 @@ import org.osgi.jmx.JmxConstants;
 import org.osgi.jmx.framework.ServiceStateMBean;
 
 import javax.management.*;
+import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.OpenDataException;
 import javax.management.openmbean.TabularData;
 import javax.management.openmbean.TabularDataSupport;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * ServiceStateMBean Implementation
+ * ServiceStateMBean and ExtendedServiceStateMBean Implementation
  *
  * @author dmytro.pishchukhin
  */
-public class ServiceState extends AbstractMBean implements ServiceStateMBean, NotificationBroadcaster, ServiceListener {
+public class ServiceState extends AbstractMBean implements ExtendedServiceStateMBean, NotificationBroadcaster, ServiceListener {
+    /**
+     * Maximum number of unregistered service IDs that are kept for <code>listServicesChangedSince</code>
+     */
+    private static final int MAX_UNREGISTERED_SERVICES = 1000;
+
     private NotificationBroadcasterSupport nbs;
     private MBeanNotificationInfo[] notificationInfos;
     private int sequenceNumber = 0;
+    /**
+     * Registered services by service ID. Maintained from service events
+     */
+    private final ConcurrentMap<Long, ServiceReference> services = new ConcurrentHashMap<Long, ServiceReference>();
+    /**
+     * Service properties tables by service ID. Valid until the service is modified or unregistered
+     */
+    private final ConcurrentMap<Long, TabularData> properties = new ConcurrentHashMap<Long, TabularData>();
+    /**
+     * Counter of MODIFIED and UNREGISTERING service events
+     */
+    private final AtomicLong serviceEvents = new AtomicLong();
+    /**
+     * Service registry metrics that are fed with service events
+     */
+    private volatile ServiceRegistryMetrics metrics;
+    /**
+     * Registered, modified and unregistered services
+     */
+    private final ChangeTracker changeTracker = new ChangeTracker(MAX_UNREGISTERED_SERVICES);
 
     public ServiceState() throws NotCompliantMBeanException {
-        super(ServiceStateMBean.class);
+        super(ExtendedServiceStateMBean.class);
         nbs = new NotificationBroadcasterSupport();
     }
 
+    /**
+     * Index already registered services. It has to be called after the MBean is added as service listener
+     */
+    public void init() {
+        for (ServiceReference serviceReference : visitor.getAllServiceReferences()) {
+            services.putIfAbsent((Long) serviceReference.getProperty(Constants.SERVICE_ID), serviceReference);
+        }
+    }
+
+    public void setMetrics(ServiceRegistryMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void uninit() {
+        metrics = null;
+        services.clear();
+        properties.clear();
+        super.uninit();
+    }
+
     public String[] getObjectClass(long serviceId) throws IOException {
         try {
-            ServiceReference serviceReference = visitor.getServiceReferenceById(serviceId);
+            ServiceReference serviceReference = getServiceReference(serviceId);
             if (serviceReference == null) {
                 throw new IllegalArgumentException("Wrong Service ID: " + serviceId);
             }
@@ -66,7 +119,7 @@ public class ServiceState extends AbstractMBean implements ServiceStateMBean, No
 
     public long getBundleIdentifier(long serviceId) throws IOException {
         try {
-            ServiceReference serviceReference = visitor.getServiceReferenceById(serviceId);
+            ServiceReference serviceReference = getServiceReference(serviceId);
             if (serviceReference == null) {
                 throw new IllegalArgumentException("Wrong Service ID: " + serviceId);
             }
@@ -82,21 +135,11 @@ public class ServiceState extends AbstractMBean implements ServiceStateMBean, No
 
     public TabularData getProperties(long serviceId) throws IOException {
         try {
-            ServiceReference serviceReference = visitor.getServiceReferenceById(serviceId);
+            ServiceReference serviceReference = getServiceReference(serviceId);
             if (serviceReference == null) {
                 throw new IllegalArgumentException("Wrong Service ID: " + serviceId);
             }
-            TabularDataSupport dataSupport = new TabularDataSupport(JmxConstants.PROPERTIES_TYPE);
-            String[] keys = serviceReference.getPropertyKeys();
-            for (String key : keys) {
-                Object value = serviceReference.getProperty(key);
-                Map<String, Object> values = new HashMap<String, Object>();
-                values.put(JmxConstants.KEY, key);
-                values.put(JmxConstants.TYPE, Utils.getValueType(value));
-                values.put(JmxConstants.VALUE, Utils.serializeToString(value));
-                dataSupport.put(new CompositeDataSupport(JmxConstants.PROPERTY_TYPE, values));
-            }
-            return dataSupport;
+            return getProperties(serviceId, serviceReference);
         } catch (IllegalArgumentException e) {
             logVisitor.warning("getProperties error", e);
             throw e;
@@ -106,18 +149,61 @@ public class ServiceState extends AbstractMBean implements ServiceStateMBean, No
         }
     }
 
+    public TabularData getProperties(long[] serviceIds) throws IOException {
+        try {
+            TabularDataSupport dataSupport = new TabularDataSupport(SERVICES_PROPERTIES_TYPE);
+            if (serviceIds != null) {
+                for (long serviceId : serviceIds) {
+                    ServiceReference serviceReference = getServiceReference(serviceId);
+                    if (serviceReference != null && !dataSupport.containsKey(new Object[]{serviceId})) {
+                        Map<String, Object> values = new HashMap<String, Object>();
+                        values.put(IDENTIFIER, serviceId);
+                        values.put(PROPERTIES, getProperties(serviceId, serviceReference));
+                        dataSupport.put(new CompositeDataSupport(SERVICE_PROPERTIES_TYPE, values));
+                    }
+                }
+            }
+            return dataSupport;
+        } catch (Exception e) {
+            logVisitor.warning("getProperties error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public long[][] getServiceUsageMatrix() throws IOException {
+        try {
+            ServiceReference[] serviceReferences = Utils.sortById(visitor.getAllServiceReferences());
+            long[][] usingBundles = new long[serviceReferences.length][];
+            int size = 0;
+            for (int i = 0; i < serviceReferences.length; i++) {
+                usingBundles[i] = Utils.getIds(serviceReferences[i].getUsingBundles());
+                Arrays.sort(usingBundles[i]);
+                size += usingBundles[i].length;
+            }
+            long[][] result = new long[2][size];
+            int index = 0;
+            for (int i = 0; i < serviceReferences.length; i++) {
+                long serviceId = (Long) serviceReferences[i].getProperty(Constants.SERVICE_ID);
+                for (long bundleId : usingBundles[i]) {
+                    result[0][index] = bundleId;
+                    result[1][index] = serviceId;
+                    index++;
+                }
+            }
+            return result;
+        } catch (Exception e) {
+            logVisitor.warning("getServiceUsageMatrix error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
     public TabularData listServices() throws IOException {
         try {
             ServiceReference[] serviceReferences = visitor.getAllServiceReferences();
             TabularDataSupport dataSupport = new TabularDataSupport(SERVICES_TYPE);
             if (serviceReferences != null) {
                 for (ServiceReference serviceReference : serviceReferences) {
-                    Map<String, Object> values = new HashMap<String, Object>();
-                    values.put(BUNDLE_IDENTIFIER, serviceReference.getBundle().getBundleId());
-                    values.put(IDENTIFIER, serviceReference.getProperty(Constants.SERVICE_ID));
-                    values.put(OBJECT_CLASS, serviceReference.getProperty(Constants.OBJECTCLASS));
-                    values.put(USING_BUNDLES, Utils.toLongArray(Utils.getIds(serviceReference.getUsingBundles())));
-                    dataSupport.put(new CompositeDataSupport(SERVICE_TYPE, values));
+                    dataSupport.put(getServiceData(serviceReference));
                 }
             }
             return dataSupport;
@@ -127,9 +213,70 @@ public class ServiceState extends AbstractMBean implements ServiceStateMBean, No
         }
     }
 
+    public TabularData listServices(String filter, int offset, int limit) throws IOException {
+        try {
+            if (offset < 0) {
+                throw new IllegalArgumentException("Offset is wrong: " + offset);
+            }
+            if (limit <= 0) {
+                throw new IllegalArgumentException("Limit is wrong: " + limit);
+            }
+            if (filter != null && filter.trim().length() == 0) {
+                filter = null;
+            }
+            ServiceReference[] serviceReferences = Utils.sortById(visitor.getAllServiceReferences(filter));
+            TabularDataSupport dataSupport = new TabularDataSupport(SERVICES_TYPE);
+            for (int i = offset; i < serviceReferences.length && dataSupport.size() < limit; i++) {
+                // service could be unregistered after lookup
+                if (serviceReferences[i].getBundle() != null) {
+                    dataSupport.put(getServiceData(serviceReferences[i]));
+                }
+            }
+            return dataSupport;
+        } catch (IllegalArgumentException e) {
+            logVisitor.warning("listServices error", e);
+            throw e;
+        } catch (Exception e) {
+            logVisitor.warning("listServices error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public CompositeData listServicesChangedSince(long generation) throws IOException {
+        try {
+            long currentGeneration = changeTracker.getGeneration();
+            ChangeTracker.Changes changes = changeTracker.getChangesSince(generation);
+            TabularDataSupport dataSupport = new TabularDataSupport(SERVICES_TYPE);
+            if (changes.isFull()) {
+                for (ServiceReference serviceReference : visitor.getAllServiceReferences()) {
+                    if (serviceReference.getBundle() != null) {
+                        dataSupport.put(getServiceData(serviceReference));
+                    }
+                }
+            } else {
+                for (Long serviceId : changes.getChanged()) {
+                    ServiceReference serviceReference = getServiceReference(serviceId);
+                    // service could be unregistered after changes are collected
+                    if (serviceReference != null && serviceReference.getBundle() != null) {
+                        dataSupport.put(getServiceData(serviceReference));
+                    }
+                }
+            }
+            Map<String, Object> values = new HashMap<String, Object>();
+            values.put(GENERATION, currentGeneration);
+            values.put(FULL, changes.isFull());
+            values.put(SERVICES, dataSupport);
+            values.put(UNREGISTERED_SERVICES, Utils.toLongArray(changes.getRemoved()));
+            return new CompositeDataSupport(SERVICES_DELTA_TYPE, values);
+        } catch (Exception e) {
+            logVisitor.warning("listServicesChangedSince error", e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
     public long[] getUsingBundles(long serviceId) throws IOException {
         try {
-            ServiceReference serviceReference = visitor.getServiceReferenceById(serviceId);
+            ServiceReference serviceReference = getServiceReference(serviceId);
             if (serviceReference == null) {
                 throw new IllegalArgumentException("Wrong Service ID: " + serviceId);
             }
@@ -165,10 +312,33 @@ public class ServiceState extends AbstractMBean implements ServiceStateMBean, No
         Notification notification = new Notification(ServiceStateMBean.EVENT, this, ++sequenceNumber,
                 System.currentTimeMillis());
 
+        ServiceReference serviceReference = event.getServiceReference();
+        Long serviceId = (Long) serviceReference.getProperty(Constants.SERVICE_ID);
+        switch (event.getType()) {
+            case ServiceEvent.REGISTERED:
+                services.put(serviceId, serviceReference);
+                changeTracker.changed(serviceId);
+                break;
+            case ServiceEvent.MODIFIED:
+                serviceEvents.incrementAndGet();
+                properties.remove(serviceId);
+                changeTracker.changed(serviceId);
+                break;
+            case ServiceEvent.UNREGISTERING:
+                serviceEvents.incrementAndGet();
+                services.remove(serviceId);
+                properties.remove(serviceId);
+                changeTracker.removed(serviceId);
+                break;
+        }
+        ServiceRegistryMetrics registryMetrics = metrics;
+        if (registryMetrics != null) {
+            registryMetrics.count(event);
+        }
+
         try {
-            ServiceReference serviceReference = event.getServiceReference();
             Map<String, Object> values = new HashMap<String, Object>();
-            values.put(IDENTIFIER, serviceReference.getProperty(Constants.SERVICE_ID));
+            values.put(IDENTIFIER, serviceId);
             values.put(OBJECT_CLASS, serviceReference.getProperty(Constants.OBJECTCLASS));
             values.put(BUNDLE_IDENTIFIER, serviceReference.getBundle().getBundleId());
             values.put(BUNDLE_LOCATION, serviceReference.getBundle().getLocation());
@@ -181,4 +351,54 @@ public class ServiceState extends AbstractMBean implements ServiceStateMBean, No
             logVisitor.warning("Unable to send ServiceEvent notification", e);
         }
     }
+
+    private TabularData getProperties(long serviceId, ServiceReference serviceReference) throws OpenDataException {
+        TabularData data = properties.get(serviceId);
+        if (data != null) {
+            return data;
+        }
+        long events = serviceEvents.get();
+        TabularDataSupport dataSupport = new TabularDataSupport(JmxConstants.PROPERTIES_TYPE);
+        String[] keys = serviceReference.getPropertyKeys();
+        for (String key : keys) {
+            Object value = serviceReference.getProperty(key);
+            Map<String, Object> values = new HashMap<String, Object>();
+            values.put(JmxConstants.KEY, key);
+            values.put(JmxConstants.TYPE, Utils.getValueType(value));
+            values.put(JmxConstants.VALUE, Utils.serializeToString(value));
+            dataSupport.put(new CompositeDataSupport(JmxConstants.PROPERTY_TYPE, values));
+        }
+        properties.put(serviceId, dataSupport);
+        // service event was received while the properties were read or the service was unregistered
+        // after the reference lookup, before its eviction could see the entry
+        if (serviceEvents.get() != events || serviceReference.getBundle() == null) {
+            properties.remove(serviceId, dataSupport);
+        }
+        return dataSupport;
+    }
+
+    private CompositeData getServiceData(ServiceReference serviceReference) throws OpenDataException {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put(BUNDLE_IDENTIFIER, serviceReference.getBundle().getBundleId());
+        values.put(IDENTIFIER, serviceReference.getProperty(Constants.SERVICE_ID));
+        values.put(OBJECT_CLASS, serviceReference.getProperty(Constants.OBJECTCLASS));
+        values.put(USING_BUNDLES, Utils.toLongArray(Utils.getIds(serviceReference.getUsingBundles())));
+        return new CompositeDataSupport(SERVICE_TYPE, values);
+    }
+
+    private ServiceReference getServiceReference(long serviceId) {
+        ServiceReference serviceReference = services.get(serviceId);
+        if (serviceReference != null) {
+            if (serviceReference.getBundle() != null) {
+                return serviceReference;
+            }
+            // service is unregistered, but the index was seeded after the event
+            services.remove(serviceId, serviceReference);
+        }
+        serviceReference = visitor.getServiceReferenceById(serviceId);
+        if (serviceReference != null) {
+            services.putIfAbsent(serviceId, serviceReference);
+        }
+        return serviceReference;
+    }
 }
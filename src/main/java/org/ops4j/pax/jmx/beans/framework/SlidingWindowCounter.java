@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Event counter over a sliding time window. The window is split into a ring of fixed width buckets,
+ * every bucket keeps its count and the number of the time slot it counts. Events are counted without locks,
+ * only reuse of a bucket of an expired slot by the next event is locked.
+ *
+ * @author dmytro.pishchukhin
+ */
+public class SlidingWindowCounter {
+    private final long bucketMillis;
+    private final AtomicLongArray counts;
+    private final AtomicLongArray slots;
+
+    /**
+     * Create counter
+     *
+     * @param bucketMillis bucket width in milliseconds
+     * @param buckets      number of buckets, the longest window is <code>bucketMillis * buckets</code>
+     */
+    public SlidingWindowCounter(long bucketMillis, int buckets) {
+        this.bucketMillis = bucketMillis;
+        // one more bucket for the current not completed time slot
+        counts = new AtomicLongArray(buckets + 1);
+        slots = new AtomicLongArray(buckets + 1);
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, -1);
+        }
+    }
+
+    /**
+     * Count event
+     *
+     * @param now event time in milliseconds
+     */
+    public void increment(long now) {
+        long slot = now / bucketMillis;
+        int index = (int) (slot % counts.length());
+        if (slots.get(index) != slot && !rollOver(index, slot)) {
+            // too old event
+            return;
+        }
+        counts.incrementAndGet(index);
+    }
+
+    /**
+     * Reuse bucket for a newer time slot. The count is reset before the slot is published, so increments
+     * of the new slot are never lost. It happens once per bucket width, so a lock is cheap here.
+     *
+     * @return <code>false</code> if the bucket is already used by a newer time slot
+     */
+    private synchronized boolean rollOver(int index, long slot) {
+        long current = slots.get(index);
+        if (current < slot) {
+            counts.set(index, 0);
+            slots.set(index, slot);
+            return true;
+        }
+        return current == slot;
+    }
+
+    /**
+     * Get number of events in the window that ends at the defined time
+     *
+     * @param now          window end time in milliseconds
+     * @param windowMillis window width in milliseconds
+     * @return number of events
+     */
+    public long getCount(long now, long windowMillis) {
+        long last = now / bucketMillis;
+        long first = getFirstSlot(last, windowMillis);
+        long result = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long slot = slots.get(i);
+            if (slot >= first && slot <= last) {
+                result += counts.get(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get time that is actually covered by the window that ends at the defined time. The window consists of
+     * the completed buckets and the not completed current bucket, so it is shorter than the window width
+     * by the rest of the current bucket.
+     *
+     * @param now          window end time in milliseconds
+     * @param windowMillis window width in milliseconds
+     * @return covered time in milliseconds, at least <code>1</code>
+     */
+    public long getCoveredMillis(long now, long windowMillis) {
+        long first = getFirstSlot(now / bucketMillis, windowMillis);
+        return Math.max(now - first * bucketMillis, 1);
+    }
+
+    private long getFirstSlot(long last, long windowMillis) {
+        return last - Math.min(windowMillis / bucketMillis, counts.length() - 1) + 1;
+    }
+}
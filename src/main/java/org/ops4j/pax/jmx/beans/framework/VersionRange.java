@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import org.osgi.framework.Version;
+
+/**
+ * OSGi version range, e.g. <code>[1.0,2.0)</code>. A single version means the version and all higher versions.
+ *
+ * @author dmytro.pishchukhin
+ */
+public class VersionRange {
+    private final Version floor;
+    private final boolean floorIncluded;
+    private final Version ceiling;
+    private final boolean ceilingIncluded;
+
+    /**
+     * Parse version range
+     *
+     * @param range version range
+     * @throws IllegalArgumentException if the range format is wrong or the floor is higher than the ceiling
+     */
+    public VersionRange(String range) {
+        String value = range.trim();
+        if (value.length() > 0 && (value.charAt(0) == '[' || value.charAt(0) == '(')) {
+            char last = value.charAt(value.length() - 1);
+            int comma = value.indexOf(',');
+            if (comma < 0 || (last != ']' && last != ')')) {
+                throw new IllegalArgumentException("Version range is wrong: " + range);
+            }
+            floor = Version.parseVersion(value.substring(1, comma).trim());
+            floorIncluded = value.charAt(0) == '[';
+            ceiling = Version.parseVersion(value.substring(comma + 1, value.length() - 1).trim());
+            ceilingIncluded = last == ']';
+            if (floor.compareTo(ceiling) > 0) {
+                throw new IllegalArgumentException("Version range floor is higher than ceiling: " + range);
+            }
+        } else {
+            floor = Version.parseVersion(value);
+            floorIncluded = true;
+            ceiling = null;
+            ceilingIncluded = false;
+        }
+    }
+
+    /**
+     * Check if version is in range
+     *
+     * @param version version
+     * @return <code>true</code> if range includes version
+     */
+    public boolean includes(Version version) {
+        int compare = version.compareTo(floor);
+        if (compare < 0 || (compare == 0 && !floorIncluded)) {
+            return false;
+        }
+        if (ceiling != null) {
+            compare = version.compareTo(ceiling);
+            return compare < 0 || (compare == 0 && ceilingIncluded);
+        }
+        return true;
+    }
+}
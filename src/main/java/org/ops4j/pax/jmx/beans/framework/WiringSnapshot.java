@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import org.ops4j.pax.jmx.Utils;
+import org.osgi.framework.Bundle;
+import org.osgi.service.packageadmin.ExportedPackage;
+import org.osgi.service.packageadmin.PackageAdmin;
+import org.osgi.service.packageadmin.RequiredBundle;
+
+import java.util.*;
+
+/**
+ * Snapshot of the bundles wiring. All <code>PackageAdmin</code> data is read once and indexed by bundle ID,
+ * so per-bundle queries do not scan exported packages and required bundles again. Required, requiring and
+ * removal pending states are answered by one <code>RequiredBundle</code> per bundle.
+ * <p/>
+ * Only the bundles the snapshot is created for are indexed and only the requested parts are built:
+ * {@link #IMPORTED_PACKAGES}, {@link #REQUIRED_BUNDLES} and {@link #FRAGMENTS}. Queries of other bundles or
+ * parts answer empty results.
+ *
+ * @author dmytro.pishchukhin
+ */
+public class WiringSnapshot {
+    /**
+     * Part of imported packages. It needs a scan of importers of all exported packages
+     */
+    public static final int IMPORTED_PACKAGES = 1;
+    /**
+     * Part of required, requiring and removal pending bundles. It needs a scan of all required bundles
+     */
+    public static final int REQUIRED_BUNDLES = 2;
+    /**
+     * Part of fragments and hosts. It is read per indexed bundle
+     */
+    public static final int FRAGMENTS = 4;
+    /**
+     * All parts
+     */
+    public static final int ALL = IMPORTED_PACKAGES | REQUIRED_BUNDLES | FRAGMENTS;
+
+    private final int parts;
+    private Map<Long, Set<String>> importedPackages = new HashMap<Long, Set<String>>();
+    private Map<Long, Set<Bundle>> requiredBundles = new HashMap<Long, Set<Bundle>>();
+    private Map<Long, RequiredBundle> requiredBundleIndex = new HashMap<Long, RequiredBundle>();
+    private Map<Long, long[]> fragments = new HashMap<Long, long[]>();
+    private Map<Long, long[]> hosts = new HashMap<Long, long[]>();
+
+    /**
+     * Create wiring snapshot with all parts
+     *
+     * @param bundles      bundles to index
+     * @param packageAdmin <code>PackageAdmin</code> service
+     */
+    public WiringSnapshot(Bundle[] bundles, PackageAdmin packageAdmin) {
+        this(bundles, packageAdmin, ALL);
+    }
+
+    /**
+     * Create wiring snapshot
+     *
+     * @param bundles      bundles to index
+     * @param packageAdmin <code>PackageAdmin</code> service
+     * @param parts        parts to build, combination of {@link #IMPORTED_PACKAGES}, {@link #REQUIRED_BUNDLES}
+     *                     and {@link #FRAGMENTS}
+     */
+    public WiringSnapshot(Bundle[] bundles, PackageAdmin packageAdmin, int parts) {
+        this.parts = parts;
+        if (bundles == null || bundles.length == 0) {
+            return;
+        }
+        Set<Long> bundleIds = new HashSet<Long>();
+        for (Bundle bundle : bundles) {
+            bundleIds.add(bundle.getBundleId());
+        }
+        if ((parts & IMPORTED_PACKAGES) != 0) {
+            indexImportedPackages(packageAdmin.getExportedPackages((Bundle) null), bundleIds);
+        }
+        if ((parts & REQUIRED_BUNDLES) != 0) {
+            indexRequiredBundles(packageAdmin.getRequiredBundles(null), bundleIds);
+        }
+        if ((parts & FRAGMENTS) != 0) {
+            indexFragments(bundles, packageAdmin);
+        }
+    }
+
+    private WiringSnapshot(WiringSnapshot snapshot, WiringSnapshot imports) {
+        parts = snapshot.parts | IMPORTED_PACKAGES;
+        importedPackages = imports.importedPackages;
+        requiredBundles = snapshot.requiredBundles;
+        requiredBundleIndex = snapshot.requiredBundleIndex;
+        fragments = snapshot.fragments;
+        hosts = snapshot.hosts;
+    }
+
+    /**
+     * Create snapshot that shares required bundles and fragments parts with this snapshot and has newly built
+     * imported packages part
+     *
+     * @param bundles      bundles to index imported packages for
+     * @param packageAdmin <code>PackageAdmin</code> service
+     * @return new wiring snapshot
+     */
+    public WiringSnapshot withImportedPackages(Bundle[] bundles, PackageAdmin packageAdmin) {
+        return new WiringSnapshot(this, new WiringSnapshot(bundles, packageAdmin, IMPORTED_PACKAGES));
+    }
+
+    /**
+     * Check if parts are built
+     *
+     * @param parts combination of parts
+     * @return <code>true</code> if all parts are built
+     */
+    public boolean hasParts(int parts) {
+        return (this.parts & parts) == parts;
+    }
+
+    /**
+     * Get packages imported by bundle
+     *
+     * @param bundle bundle
+     * @return non-<code>null</code> array of packages in [name];[version] format
+     */
+    public String[] getImportedPackages(Bundle bundle) {
+        Set<String> result = importedPackages.get(bundle.getBundleId());
+        if (result == null) {
+            return new String[0];
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Get IDs of bundles required by bundle
+     *
+     * @param bundle bundle
+     * @return non-<code>null</code> bundle ids array
+     */
+    public long[] getRequiredBundles(Bundle bundle) {
+        Set<Bundle> result = requiredBundles.get(bundle.getBundleId());
+        if (result == null) {
+            return new long[0];
+        }
+        return Utils.getIds(result.toArray(new Bundle[result.size()]));
+    }
+
+    /**
+     * Get IDs of bundles that require bundle
+     *
+     * @param bundle bundle
+     * @return non-<code>null</code> bundle ids array
+     */
+    public long[] getRequiringBundles(Bundle bundle) {
+        RequiredBundle requiredBundle = requiredBundleIndex.get(bundle.getBundleId());
+        if (requiredBundle == null) {
+            return new long[0];
+        }
+        return Utils.getIds(requiredBundle.getRequiringBundles());
+    }
+
+    /**
+     * Check if bundle is required by other bundles
+     *
+     * @param bundle bundle
+     * @return <code>true</code> if bundle has requiring bundles
+     */
+    public boolean isRequired(Bundle bundle) {
+        RequiredBundle requiredBundle = requiredBundleIndex.get(bundle.getBundleId());
+        if (requiredBundle == null) {
+            return false;
+        }
+        Bundle[] requiring = requiredBundle.getRequiringBundles();
+        return requiring != null && requiring.length > 0;
+    }
+
+    /**
+     * Check if required bundle is pending removal
+     *
+     * @param bundle bundle
+     * @return <code>true</code> if bundle is required and pending removal
+     */
+    public boolean isRemovalPending(Bundle bundle) {
+        RequiredBundle requiredBundle = requiredBundleIndex.get(bundle.getBundleId());
+        return requiredBundle != null && requiredBundle.isRemovalPending();
+    }
+
+    /**
+     * Get IDs of fragments attached to bundle
+     *
+     * @param bundle host bundle
+     * @return non-<code>null</code> bundle ids array
+     */
+    public long[] getFragments(Bundle bundle) {
+        long[] result = fragments.get(bundle.getBundleId());
+        return result != null ? result : new long[0];
+    }
+
+    /**
+     * Get IDs of hosts bundle is attached to
+     *
+     * @param bundle fragment bundle
+     * @return non-<code>null</code> bundle ids array
+     */
+    public long[] getHosts(Bundle bundle) {
+        long[] result = hosts.get(bundle.getBundleId());
+        return result != null ? result : new long[0];
+    }
+
+    private void indexImportedPackages(ExportedPackage[] exportedPackages, Set<Long> bundleIds) {
+        if (exportedPackages != null) {
+            for (ExportedPackage exportedPackage : exportedPackages) {
+                Bundle[] importingBundles = exportedPackage.getImportingBundles();
+                if (importingBundles != null) {
+                    String name = null;
+                    for (Bundle importingBundle : importingBundles) {
+                        if (!bundleIds.contains(importingBundle.getBundleId())) {
+                            continue;
+                        }
+                        if (name == null) {
+                            name = exportedPackage.getName() + ";" + exportedPackage.getVersion().toString();
+                        }
+                        Set<String> packages = importedPackages.get(importingBundle.getBundleId());
+                        if (packages == null) {
+                            packages = new HashSet<String>();
+                            importedPackages.put(importingBundle.getBundleId(), packages);
+                        }
+                        packages.add(name);
+                    }
+                }
+            }
+        }
+    }
+
+    private void indexRequiredBundles(RequiredBundle[] allRequiredBundles, Set<Long> bundleIds) {
+        if (allRequiredBundles != null) {
+            for (RequiredBundle requiredBundle : allRequiredBundles) {
+                Bundle associatedRequiredBundle = requiredBundle.getBundle();
+                if (associatedRequiredBundle == null) {
+                    continue;
+                }
+                Bundle[] requiring = requiredBundle.getRequiringBundles();
+                if (bundleIds.contains(associatedRequiredBundle.getBundleId())
+                        && !requiredBundleIndex.containsKey(associatedRequiredBundle.getBundleId())) {
+                    requiredBundleIndex.put(associatedRequiredBundle.getBundleId(), requiredBundle);
+                }
+                if (requiring != null) {
+                    for (Bundle requiringBundle : requiring) {
+                        if (!bundleIds.contains(requiringBundle.getBundleId())) {
+                            continue;
+                        }
+                        Set<Bundle> required = requiredBundles.get(requiringBundle.getBundleId());
+                        if (required == null) {
+                            required = new LinkedHashSet<Bundle>();
+                            requiredBundles.put(requiringBundle.getBundleId(), required);
+                        }
+                        required.add(associatedRequiredBundle);
+                    }
+                }
+            }
+        }
+    }
+
+    private void indexFragments(Bundle[] bundles, PackageAdmin packageAdmin) {
+        for (Bundle bundle : bundles) {
+            Bundle[] attachedFragments = packageAdmin.getFragments(bundle);
+            if (attachedFragments != null) {
+                fragments.put(bundle.getBundleId(), Utils.getIds(attachedFragments));
+            }
+            Bundle[] bundleHosts = packageAdmin.getHosts(bundle);
+            if (bundleHosts != null) {
+                hosts.put(bundle.getBundleId(), Utils.getIds(bundleHosts));
+            }
+        }
+    }
+}
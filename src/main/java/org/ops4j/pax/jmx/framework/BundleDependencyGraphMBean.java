@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.framework;
+
+import java.io.IOException;
+
+/**
+ * This MBean answers transitive bundle dependencies calculated from the <code>PackageAdmin</code> wiring.
+ * A bundle depends on the bundles it imports packages from, the bundles it requires and, for fragments, its hosts.
+ * <p/>
+ * The graph is kept until the wiring is changed with a bundle resolution or a packages refresh. Dynamic imports
+ * are wired without any event, so packages imported dynamically after the graph was built are missing until
+ * the next resolution or refresh.
+ *
+ * @author dmytro.pishchukhin
+ */
+public interface BundleDependencyGraphMBean {
+    /**
+     * Bundle Dependency Graph MBean object name.
+     */
+    String OBJECTNAME = "org.ops4j.pax.jmx:type=bundleDependencyGraph,version=1.0";
+
+    /**
+     * Answer the IDs of bundles the bundle transitively depends on
+     *
+     * @param bundleIdentifier the bundle identifier
+     * @return the sorted bundle identifiers, without the bundle itself
+     *
+     * @throws IllegalArgumentException if the bundle indicated does not exist
+     * @throws IOException              if the operation fails
+     */
+    long[] getDependencies(long bundleIdentifier) throws IOException;
+
+    /**
+     * Answer the IDs of bundles that transitively depend on the bundle
+     *
+     * @param bundleIdentifier the bundle identifier
+     * @return the sorted bundle identifiers, without the bundle itself
+     *
+     * @throws IllegalArgumentException if the bundle indicated does not exist
+     * @throws IOException              if the operation fails
+     */
+    long[] getDependents(long bundleIdentifier) throws IOException;
+
+    /**
+     * Answer the IDs of bundles that are refreshed together with the bundles: the bundles, their transitive
+     * dependents and attached fragments and hosts
+     *
+     * @param bundleIdentifiers the bundle identifiers
+     * @return the sorted bundle identifiers, including the bundles itself
+     *
+     * @throws IllegalArgumentException if one of the bundles indicated does not exist
+     * @throws IOException              if the operation fails
+     */
+    long[] getRefreshClosure(long[] bundleIdentifiers) throws IOException;
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.framework;
+
+import org.osgi.jmx.Item;
+import org.osgi.jmx.JmxConstants;
+import org.osgi.jmx.framework.BundleStateMBean;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularType;
+import java.io.IOException;
+
+/**
+ * This MBean extends {@link BundleStateMBean} with operations that scale to frameworks with many bundles.
+ * It is registered with the {@link BundleStateMBean#OBJECTNAME} object name.
+ *
+ * @author dmytro.pishchukhin
+ */
+public interface ExtendedBundleStateMBean extends BundleStateMBean {
+    /**
+     * The key GENERATION, used in {@link ExtendedBundleStateMBean#GENERATION_ITEM}
+     */
+    String GENERATION = "Generation";
+    /**
+     * The item for the generation of the bundles state. The key is {@link ExtendedBundleStateMBean#GENERATION}
+     * and type is <code>SimpleType.LONG</code>.
+     */
+    Item GENERATION_ITEM = new Item(GENERATION, "The generation of the bundles state", SimpleType.LONG);
+    /**
+     * The key FULL, used in {@link ExtendedBundleStateMBean#FULL_ITEM}
+     */
+    String FULL = "Full";
+    /**
+     * The item for the full state flag. The key is {@link ExtendedBundleStateMBean#FULL}
+     * and type is <code>SimpleType.BOOLEAN</code>.
+     */
+    Item FULL_ITEM = new Item(FULL, "If true, the bundles table contains all bundles and replaces the known state",
+            SimpleType.BOOLEAN);
+    /**
+     * The key BUNDLES, used in {@link ExtendedBundleStateMBean#BUNDLES_ITEM}
+     */
+    String BUNDLES = "Bundles";
+    /**
+     * The item for the changed bundles. The key is {@link ExtendedBundleStateMBean#BUNDLES}
+     * and type is {@link BundleStateMBean#BUNDLES_TYPE}.
+     */
+    Item BUNDLES_ITEM = new Item(BUNDLES, "The changed bundles", BUNDLES_TYPE);
+    /**
+     * The key UNINSTALLED_BUNDLES, used in {@link ExtendedBundleStateMBean#UNINSTALLED_BUNDLES_ITEM}
+     */
+    String UNINSTALLED_BUNDLES = "UninstalledBundles";
+    /**
+     * The item for the uninstalled bundle identifiers. The key is {@link ExtendedBundleStateMBean#UNINSTALLED_BUNDLES}
+     * and type is {@link JmxConstants#LONG_ARRAY_TYPE}.
+     */
+    Item UNINSTALLED_BUNDLES_ITEM = new Item(UNINSTALLED_BUNDLES, "The uninstalled bundle identifiers",
+            JmxConstants.LONG_ARRAY_TYPE);
+    /**
+     * The Composite Type for the bundles changes. It contains the following items:
+     * <ul>
+     * <li>{@link ExtendedBundleStateMBean#GENERATION}</li>
+     * <li>{@link ExtendedBundleStateMBean#FULL}</li>
+     * <li>{@link ExtendedBundleStateMBean#BUNDLES}</li>
+     * <li>{@link ExtendedBundleStateMBean#UNINSTALLED_BUNDLES}</li>
+     * </ul>
+     */
+    CompositeType BUNDLES_DELTA_TYPE = Item.compositeType("BundlesDelta", "This type encapsulates bundles changes",
+            GENERATION_ITEM, FULL_ITEM, BUNDLES_ITEM, UNINSTALLED_BUNDLES_ITEM);
+
+    /**
+     * The Composite Type for the headers of a bundle. It contains the following items:
+     * <ul>
+     * <li>{@link BundleStateMBean#IDENTIFIER}</li>
+     * <li>{@link BundleStateMBean#HEADERS}</li>
+     * </ul>
+     */
+    CompositeType BUNDLE_HEADERS_TYPE = Item.compositeType("BundleHeaders", "This type encapsulates bundle headers",
+            IDENTIFIER_ITEM, HEADERS_ITEM);
+    /**
+     * The Tabular Type for the headers of bundles. The row type is {@link ExtendedBundleStateMBean#BUNDLE_HEADERS_TYPE},
+     * the index is {@link BundleStateMBean#IDENTIFIER}.
+     */
+    TabularType BUNDLES_HEADERS_TYPE = Item.tabularType("BundlesHeaders", "The headers of bundles",
+            BUNDLE_HEADERS_TYPE, IDENTIFIER);
+
+    /**
+     * Answer a page of bundles ordered by bundle identifier. The Tabular Data is typed by
+     * {@link BundleStateMBean#BUNDLES_TYPE}.
+     * <p/>
+     * Bundle identifiers are never reused, so a client that requests the next page starting from the last
+     * returned identifier + 1 gets stable pages while bundles are installed or uninstalled concurrently.
+     * A page with less than <code>limit</code> rows is the last one.
+     *
+     * @param fromBundleId the first bundle identifier of the page (inclusive)
+     * @param limit        the maximum number of bundles in the page
+     * @return the tabular representation of the bundles page typed by {@link BundleStateMBean#BUNDLES_TYPE}
+     *
+     * @throws IllegalArgumentException if <code>limit</code> is not positive
+     * @throws IOException              if the operation fails
+     */
+    TabularData listBundles(long fromBundleId, int limit) throws IOException;
+
+    /**
+     * Answer the bundle state of the system with the requested bundle items only. The row type of the returned
+     * Tabular Data is a projection of {@link BundleStateMBean#BUNDLE_TYPE} that contains the requested items and
+     * {@link BundleStateMBean#IDENTIFIER}, that is the index of the table. Names of the projected types are
+     * the names of the full types followed by the sorted item names, so they differ for every projection.
+     * <p/>
+     * Items that are not requested are not calculated, e.g. <code>PackageAdmin</code> and <code>StartLevel</code>
+     * services are not used if none of the items that depend on them are requested, and the importers of
+     * exported packages are scanned only if {@link BundleStateMBean#IMPORTED_PACKAGES} is requested.
+     *
+     * @param items the names of the {@link BundleStateMBean#BUNDLE_TYPE} items to return
+     * @return the tabular representation of the projected bundle composite data
+     *
+     * @throws IllegalArgumentException if <code>items</code> is empty or contains an unknown item name
+     * @throws IOException              if the operation fails
+     */
+    TabularData listBundles(String[] items) throws IOException;
+
+    /**
+     * Answer the bundles that are changed after the given generation. The Composite Data is typed by
+     * {@link ExtendedBundleStateMBean#BUNDLES_DELTA_TYPE}: it contains the changed bundles, the identifiers of the
+     * bundles uninstalled after the given generation and the generation to pass to the next call.
+     * <p/>
+     * If the given generation is unknown, e.g. it is older than the kept uninstalled bundles history or it is
+     * received from another MBean instance, the {@link ExtendedBundleStateMBean#FULL} flag is set and the table
+     * contains all bundles. Pass <code>0</code> to get the initial state.
+     * <p/>
+     * Wiring, start levels and services are changed without bundle events, so the server still checks the rows
+     * of all bundles on every call: the cost on the server is O(all bundles), the delta reduces the transferred
+     * data only.
+     *
+     * @param generation the generation returned by the previous call
+     * @return the bundles changes typed by {@link ExtendedBundleStateMBean#BUNDLES_DELTA_TYPE}
+     *
+     * @throws IOException if the operation fails
+     */
+    CompositeData listBundlesChangedSince(long generation) throws IOException;
+
+    /**
+     * Answer the states of the bundles in one call. The result entries are in the order of the given identifiers.
+     * The entry of an unknown bundle identifier is <code>null</code>.
+     *
+     * @param bundleIdentifiers the bundle identifiers
+     * @return the bundle states
+     *
+     * @throws IOException if the operation fails
+     */
+    String[] getStates(long[] bundleIdentifiers) throws IOException;
+
+    /**
+     * Answer the symbolic names of the bundles in one call. The result entries are in the order of the given identifiers.
+     * The entry of an unknown bundle identifier is <code>null</code>.
+     *
+     * @param bundleIdentifiers the bundle identifiers
+     * @return the bundle symbolic names
+     *
+     * @throws IOException if the operation fails
+     */
+    String[] getSymbolicNames(long[] bundleIdentifiers) throws IOException;
+
+    /**
+     * Answer the versions of the bundles in one call. The result entries are in the order of the given identifiers.
+     * The entry of an unknown bundle identifier is <code>null</code>.
+     *
+     * @param bundleIdentifiers the bundle identifiers
+     * @return the bundle versions
+     *
+     * @throws IOException if the operation fails
+     */
+    String[] getVersions(long[] bundleIdentifiers) throws IOException;
+
+    /**
+     * Answer the locations of the bundles in one call. The result entries are in the order of the given identifiers.
+     * The entry of an unknown bundle identifier is <code>null</code>.
+     *
+     * @param bundleIdentifiers the bundle identifiers
+     * @return the bundle locations
+     *
+     * @throws IOException if the operation fails
+     */
+    String[] getLocations(long[] bundleIdentifiers) throws IOException;
+
+    /**
+     * Answer the start levels of the bundles in one call. The result entries are in the order of the given identifiers.
+     * The entry of an unknown bundle identifier is <code>-1</code>.
+     *
+     * @param bundleIdentifiers the bundle identifiers
+     * @return the bundle start levels
+     *
+     * @throws IOException if the operation fails
+     */
+    int[] getStartLevels(long[] bundleIdentifiers) throws IOException;
+
+    /**
+     * Answer the last modification times of the bundles in one call. The result entries are in the order of the given identifiers.
+     * The entry of an unknown bundle identifier is <code>-1</code>.
+     *
+     * @param bundleIdentifiers the bundle identifiers
+     * @return the bundle last modification times
+     *
+     * @throws IOException if the operation fails
+     */
+    long[] getLastModifiedTimes(long[] bundleIdentifiers) throws IOException;
+
+    /**
+     * Answer the bundle headers localized for the given locale. The Tabular Data is typed by
+     * {@link BundleStateMBean#HEADERS_TYPE}. Localized headers are cached until the bundle is updated,
+     * uninstalled or unresolved.
+     *
+     * @param bundleIdentifier the bundle identifier
+     * @param locale           the locale name, the empty string for the raw headers or <code>null</code>
+     *                         for the default locale
+     * @return the localized bundle headers typed by {@link BundleStateMBean#HEADERS_TYPE}
+     *
+     * @throws IllegalArgumentException if the bundle indicated does not exist
+     * @throws IOException              if the operation fails
+     */
+    TabularData getHeaders(long bundleIdentifier, String locale) throws IOException;
+
+    /**
+     * Answer the headers of the bundles localized for the given locale in one call. The Tabular Data is typed by
+     * {@link ExtendedBundleStateMBean#BUNDLES_HEADERS_TYPE}. Unknown bundle identifiers are skipped.
+     *
+     * @param bundleIdentifiers the bundle identifiers
+     * @param locale            the locale name, the empty string for the raw headers or <code>null</code>
+     *                          for the default locale
+     * @return the localized headers of bundles typed by {@link ExtendedBundleStateMBean#BUNDLES_HEADERS_TYPE}
+     *
+     * @throws IOException if the operation fails
+     */
+    TabularData getHeaders(long[] bundleIdentifiers, String locale) throws IOException;
+}
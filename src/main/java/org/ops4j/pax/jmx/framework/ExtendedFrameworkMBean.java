@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.framework;
+
+import org.osgi.jmx.Item;
+import org.osgi.jmx.JmxConstants;
+import org.osgi.jmx.framework.FrameworkMBean;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularType;
+import java.io.IOException;
+
+/**
+ * This MBean extends {@link FrameworkMBean} with operations for large frameworks.
+ * It is registered with the {@link FrameworkMBean#OBJECTNAME} object name.
+ * <p/>
+ * Asynchronous batch operations return a job identifier immediately and are executed in the background.
+ * Every change of a job is emitted as a {@link ExtendedFrameworkMBean#JOB_EVENT} notification with the job status
+ * as user data.
+ *
+ * @author dmytro.pishchukhin
+ */
+public interface ExtendedFrameworkMBean extends FrameworkMBean {
+    /**
+     * The key REFRESHED_BUNDLES, used in {@link ExtendedFrameworkMBean#REFRESHED_BUNDLES_ITEM}
+     */
+    String REFRESHED_BUNDLES = "RefreshedBundles";
+    /**
+     * The item for the identifiers of bundles affected by refresh. The key is
+     * {@link ExtendedFrameworkMBean#REFRESHED_BUNDLES} and type is {@link JmxConstants#LONG_ARRAY_TYPE}.
+     */
+    Item REFRESHED_BUNDLES_ITEM = new Item(REFRESHED_BUNDLES, "The bundles that are refreshed",
+            JmxConstants.LONG_ARRAY_TYPE);
+    /**
+     * The key RESTARTED_BUNDLES, used in {@link ExtendedFrameworkMBean#RESTARTED_BUNDLES_ITEM}
+     */
+    String RESTARTED_BUNDLES = "RestartedBundles";
+    /**
+     * The item for the identifiers of active bundles that are stopped and started again by refresh. The key is
+     * {@link ExtendedFrameworkMBean#RESTARTED_BUNDLES} and type is {@link JmxConstants#LONG_ARRAY_TYPE}.
+     */
+    Item RESTARTED_BUNDLES_ITEM = new Item(RESTARTED_BUNDLES, "The bundles that are stopped and started again",
+            JmxConstants.LONG_ARRAY_TYPE);
+    /**
+     * The key START_LEVEL, used in {@link ExtendedFrameworkMBean#START_LEVEL_ITEM}
+     */
+    String START_LEVEL = "StartLevel";
+    /**
+     * The item for the bundle start level. The key is {@link ExtendedFrameworkMBean#START_LEVEL}
+     * and type is <code>SimpleType.INTEGER</code>.
+     */
+    Item START_LEVEL_ITEM = new Item(START_LEVEL, "The bundle start level", SimpleType.INTEGER);
+    /**
+     * The key REFRESHED_COUNT, used in {@link ExtendedFrameworkMBean#REFRESHED_COUNT_ITEM}
+     */
+    String REFRESHED_COUNT = "RefreshedCount";
+    /**
+     * The item for the number of refreshed bundles. The key is {@link ExtendedFrameworkMBean#REFRESHED_COUNT}
+     * and type is <code>SimpleType.INTEGER</code>.
+     */
+    Item REFRESHED_COUNT_ITEM = new Item(REFRESHED_COUNT, "The number of refreshed bundles", SimpleType.INTEGER);
+    /**
+     * The key RESTARTED_COUNT, used in {@link ExtendedFrameworkMBean#RESTARTED_COUNT_ITEM}
+     */
+    String RESTARTED_COUNT = "RestartedCount";
+    /**
+     * The item for the number of restarted bundles. The key is {@link ExtendedFrameworkMBean#RESTARTED_COUNT}
+     * and type is <code>SimpleType.INTEGER</code>.
+     */
+    Item RESTARTED_COUNT_ITEM = new Item(RESTARTED_COUNT, "The number of restarted bundles", SimpleType.INTEGER);
+    /**
+     * The Composite Type for the refresh impact on a start level. It contains the following items:
+     * <ul>
+     * <li>{@link ExtendedFrameworkMBean#START_LEVEL}</li>
+     * <li>{@link ExtendedFrameworkMBean#REFRESHED_COUNT}</li>
+     * <li>{@link ExtendedFrameworkMBean#RESTARTED_COUNT}</li>
+     * </ul>
+     */
+    CompositeType START_LEVEL_IMPACT_TYPE = Item.compositeType("StartLevelImpact",
+            "This type encapsulates the refresh impact on a start level", START_LEVEL_ITEM, REFRESHED_COUNT_ITEM,
+            RESTARTED_COUNT_ITEM);
+    /**
+     * The Tabular Type for the refresh impact per start level. The row type is
+     * {@link ExtendedFrameworkMBean#START_LEVEL_IMPACT_TYPE}, the index is {@link ExtendedFrameworkMBean#START_LEVEL}.
+     */
+    TabularType START_LEVELS_IMPACT_TYPE = Item.tabularType("StartLevelsImpact",
+            "The refresh impact per start level", START_LEVEL_IMPACT_TYPE, START_LEVEL);
+    /**
+     * The key START_LEVELS, used in {@link ExtendedFrameworkMBean#START_LEVELS_ITEM}
+     */
+    String START_LEVELS = "StartLevels";
+    /**
+     * The item for the refresh impact per start level. The key is {@link ExtendedFrameworkMBean#START_LEVELS}
+     * and type is {@link ExtendedFrameworkMBean#START_LEVELS_IMPACT_TYPE}.
+     */
+    Item START_LEVELS_ITEM = new Item(START_LEVELS, "The refresh impact per start level", START_LEVELS_IMPACT_TYPE);
+    /**
+     * The Composite Type for the refresh impact. It contains the following items:
+     * <ul>
+     * <li>{@link ExtendedFrameworkMBean#REFRESHED_BUNDLES}</li>
+     * <li>{@link ExtendedFrameworkMBean#RESTARTED_BUNDLES}</li>
+     * <li>{@link ExtendedFrameworkMBean#START_LEVELS}</li>
+     * </ul>
+     */
+    CompositeType REFRESH_IMPACT_TYPE = Item.compositeType("RefreshImpact",
+            "This type encapsulates the impact of bundles refresh", REFRESHED_BUNDLES_ITEM, RESTARTED_BUNDLES_ITEM,
+            START_LEVELS_ITEM);
+    /**
+     * The notification type of batch job progress events
+     */
+    String JOB_EVENT = "BatchJobEvent";
+    /**
+     * The key JOB_ID, used in {@link ExtendedFrameworkMBean#JOB_ID_ITEM}
+     */
+    String JOB_ID = "JobId";
+    /**
+     * The item for the batch job identifier. The key is {@link ExtendedFrameworkMBean#JOB_ID}
+     * and type is <code>SimpleType.LONG</code>.
+     */
+    Item JOB_ID_ITEM = new Item(JOB_ID, "The batch job identifier", SimpleType.LONG);
+    /**
+     * The key OPERATION, used in {@link ExtendedFrameworkMBean#OPERATION_ITEM}
+     */
+    String OPERATION = "Operation";
+    /**
+     * The item for the name of the batch operation, e.g. <code>startBundles</code>. The key is
+     * {@link ExtendedFrameworkMBean#OPERATION} and type is <code>SimpleType.STRING</code>.
+     */
+    Item OPERATION_ITEM = new Item(OPERATION, "The batch operation", SimpleType.STRING);
+    /**
+     * The key JOB_STATE, used in {@link ExtendedFrameworkMBean#JOB_STATE_ITEM}
+     */
+    String JOB_STATE = "JobState";
+    /**
+     * The item for the batch job state. The key is {@link ExtendedFrameworkMBean#JOB_STATE}
+     * and type is <code>SimpleType.STRING</code>. The value is one of {@link ExtendedFrameworkMBean#JOB_QUEUED},
+     * {@link ExtendedFrameworkMBean#JOB_RUNNING}, {@link ExtendedFrameworkMBean#JOB_COMPLETED},
+     * {@link ExtendedFrameworkMBean#JOB_FAILED} and {@link ExtendedFrameworkMBean#JOB_CANCELLED}.
+     */
+    Item JOB_STATE_ITEM = new Item(JOB_STATE, "The batch job state", SimpleType.STRING);
+    /**
+     * The job is waiting for execution
+     */
+    String JOB_QUEUED = "QUEUED";
+    /**
+     * The job is being executed
+     */
+    String JOB_RUNNING = "RUNNING";
+    /**
+     * The job processed all bundles
+     */
+    String JOB_COMPLETED = "COMPLETED";
+    /**
+     * The job is stopped on a bundle in error
+     */
+    String JOB_FAILED = "FAILED";
+    /**
+     * The job is cancelled before all bundles were processed
+     */
+    String JOB_CANCELLED = "CANCELLED";
+    /**
+     * The Composite Type for the status of asynchronous batch start, stop, update and uninstall. It contains
+     * the following items:
+     * <ul>
+     * <li>{@link ExtendedFrameworkMBean#JOB_ID}</li>
+     * <li>{@link ExtendedFrameworkMBean#OPERATION}</li>
+     * <li>{@link ExtendedFrameworkMBean#JOB_STATE}</li>
+     * <li>{@link FrameworkMBean#COMPLETED}</li>
+     * <li>{@link FrameworkMBean#REMAINING} with bundle identifiers</li>
+     * <li>{@link FrameworkMBean#BUNDLE_IN_ERROR} with bundle identifier</li>
+     * <li>{@link FrameworkMBean#ERROR}</li>
+     * <li>{@link FrameworkMBean#SUCCESS}</li>
+     * </ul>
+     */
+    CompositeType BATCH_ACTION_JOB_TYPE = Item.compositeType("BatchActionJob",
+            "This type encapsulates the status of an asynchronous batch action", JOB_ID_ITEM, OPERATION_ITEM,
+            JOB_STATE_ITEM, COMPLETED_ITEM, REMAINING_ID_ITEM, BUNDLE_IN_ERROR_ID_ITEM, ERROR_ITEM, SUCCESS_ITEM);
+    /**
+     * The Composite Type for the status of asynchronous batch install. It contains the following items:
+     * <ul>
+     * <li>{@link ExtendedFrameworkMBean#JOB_ID}</li>
+     * <li>{@link ExtendedFrameworkMBean#OPERATION}</li>
+     * <li>{@link ExtendedFrameworkMBean#JOB_STATE}</li>
+     * <li>{@link FrameworkMBean#COMPLETED}</li>
+     * <li>{@link FrameworkMBean#REMAINING} with bundle locations</li>
+     * <li>{@link FrameworkMBean#BUNDLE_IN_ERROR} with bundle location</li>
+     * <li>{@link FrameworkMBean#ERROR}</li>
+     * <li>{@link FrameworkMBean#SUCCESS}</li>
+     * </ul>
+     */
+    CompositeType BATCH_INSTALL_JOB_TYPE = Item.compositeType("BatchInstallJob",
+            "This type encapsulates the status of an asynchronous batch install", JOB_ID_ITEM, OPERATION_ITEM,
+            JOB_STATE_ITEM, COMPLETED_ITEM, REMAINING_LOCATION_ITEM, BUNDLE_IN_ERROR_LOCATION_ITEM, ERROR_ITEM,
+            SUCCESS_ITEM);
+
+    /**
+     * Answer the impact of refreshing the bundles without refreshing them. The refreshed bundles are the bundles,
+     * their transitive dependents and attached fragments and hosts calculated from the current wiring. Active bundles
+     * among them are stopped and started again. The Composite Data is typed by
+     * {@link ExtendedFrameworkMBean#REFRESH_IMPACT_TYPE}.
+     *
+     * @param bundleIdentifiers the identifiers of bundles to refresh
+     * @return the refresh impact typed by {@link ExtendedFrameworkMBean#REFRESH_IMPACT_TYPE}
+     *
+     * @throws IllegalArgumentException if one of the bundles indicated does not exist
+     * @throws IOException              if the operation fails
+     */
+    CompositeData previewRefreshBundles(long[] bundleIdentifiers) throws IOException;
+
+    /**
+     * Install the bundles from the locations in the background. The job stops on the first bundle in error
+     *
+     * @param locations the array of locations of the bundles to install
+     * @return the job identifier
+     *
+     * @throws IOException if the operation fails or 100 unfinished jobs are already submitted
+     */
+    long installBundlesAsync(String[] locations) throws IOException;
+
+    /**
+     * Start the bundles in the background. The job stops on the first bundle in error
+     *
+     * @param bundleIdentifiers the array of bundle identifiers
+     * @return the job identifier
+     *
+     * @throws IOException if the operation fails or 100 unfinished jobs are already submitted
+     */
+    long startBundlesAsync(long[] bundleIdentifiers) throws IOException;
+
+    /**
+     * Stop the bundles in the background. The job stops on the first bundle in error
+     *
+     * @param bundleIdentifiers the array of bundle identifiers
+     * @return the job identifier
+     *
+     * @throws IOException if the operation fails or 100 unfinished jobs are already submitted
+     */
+    long stopBundlesAsync(long[] bundleIdentifiers) throws IOException;
+
+    /**
+     * Update the bundles in the background. The job stops on the first bundle in error
+     *
+     * @param bundleIdentifiers the array of bundle identifiers
+     * @return the job identifier
+     *
+     * @throws IOException if the operation fails or 100 unfinished jobs are already submitted
+     */
+    long updateBundlesAsync(long[] bundleIdentifiers) throws IOException;
+
+    /**
+     * Uninstall the bundles in the background. The job stops on the first bundle in error
+     *
+     * @param bundleIdentifiers the array of bundle identifiers
+     * @return the job identifier
+     *
+     * @throws IOException if the operation fails or 100 unfinished jobs are already submitted
+     */
+    long uninstallBundlesAsync(long[] bundleIdentifiers) throws IOException;
+
+    /**
+     * Answer the status of the batch job. The Composite Data is typed by
+     * {@link ExtendedFrameworkMBean#BATCH_INSTALL_JOB_TYPE} for install jobs and by
+     * {@link ExtendedFrameworkMBean#BATCH_ACTION_JOB_TYPE} for other jobs.
+     *
+     * @param jobIdentifier the job identifier
+     * @return the job status
+     *
+     * @throws IllegalArgumentException if the job indicated does not exist
+     * @throws IOException              if the operation fails
+     */
+    CompositeData getJobStatus(long jobIdentifier) throws IOException;
+
+    /**
+     * Cancel the batch job. The bundle that is being processed is finished, the remaining bundles are skipped
+     *
+     * @param jobIdentifier the job identifier
+     * @return <code>true</code> if the job was not finished yet
+     *
+     * @throws IllegalArgumentException if the job indicated does not exist
+     * @throws IOException              if the operation fails
+     */
+    boolean cancelJob(long jobIdentifier) throws IOException;
+
+    /**
+     * Answer the identifiers of the known batch jobs. At most 100 jobs are kept, the oldest finished jobs
+     * are forgotten first
+     *
+     * @return the job identifiers in the order of submission
+     *
+     * @throws IOException if the operation fails
+     */
+    long[] listJobs() throws IOException;
+}
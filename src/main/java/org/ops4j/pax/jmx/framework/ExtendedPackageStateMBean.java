@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.framework;
+
+import org.osgi.jmx.framework.PackageStateMBean;
+
+import javax.management.openmbean.TabularData;
+import java.io.IOException;
+
+/**
+ * This MBean extends {@link PackageStateMBean} with operations that scale to frameworks with many packages.
+ * It is registered with the {@link PackageStateMBean#OBJECTNAME} object name.
+ *
+ * @author dmytro.pishchukhin
+ */
+public interface ExtendedPackageStateMBean extends PackageStateMBean {
+    /**
+     * Answer a page of packages with the name prefix and the version in the range. Packages are ordered by
+     * name and version. The Tabular Data is typed by {@link PackageStateMBean#PACKAGES_TYPE}.
+     * <p/>
+     * The name prefix is matched literally, not by package name segments: <code>com.acme</code> matches
+     * <code>com.acme</code>, <code>com.acme.impl</code> and <code>com.acmefoo</code>. Pass <code>com.acme.</code>
+     * to get the sub-packages only.
+     *
+     * @param namePrefix   the package name prefix, <code>null</code> or empty string for all packages
+     * @param versionRange the version range, e.g. <code>[1.0,2.0)</code>, <code>null</code> or empty string
+     *                     for all versions
+     * @param offset       the number of matching packages to skip
+     * @param limit        the maximum number of packages in the page
+     * @return the page of packages typed by {@link PackageStateMBean#PACKAGES_TYPE}
+     *
+     * @throws IllegalArgumentException if the version range is wrong or its floor is higher than its ceiling,
+     *                                  offset is negative or limit is not positive
+     * @throws IOException              if the operation fails
+     */
+    TabularData listPackages(String namePrefix, String versionRange, int offset, int limit) throws IOException;
+
+    /**
+     * Answer the conflicting packages: packages that are exported at several versions and packages that are
+     * exported by several bundles at the same version. All versions of such packages are returned with their
+     * exporting and importing bundles. The Tabular Data is typed by {@link PackageStateMBean#PACKAGES_TYPE}.
+     *
+     * @return the conflicting packages typed by {@link PackageStateMBean#PACKAGES_TYPE}
+     *
+     * @throws IOException if the operation fails
+     */
+    TabularData listPackageConflicts() throws IOException;
+}
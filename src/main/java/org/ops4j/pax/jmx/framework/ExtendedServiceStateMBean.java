@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.framework;
+
+import org.osgi.jmx.Item;
+import org.osgi.jmx.JmxConstants;
+import org.osgi.jmx.framework.ServiceStateMBean;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularType;
+import java.io.IOException;
+
+/**
+ * This MBean extends {@link ServiceStateMBean} with operations that scale to frameworks with many services.
+ * It is registered with the {@link ServiceStateMBean#OBJECTNAME} object name.
+ *
+ * @author dmytro.pishchukhin
+ */
+public interface ExtendedServiceStateMBean extends ServiceStateMBean {
+    /**
+     * The key PROPERTIES, used in {@link ExtendedServiceStateMBean#PROPERTIES_ITEM}
+     */
+    String PROPERTIES = "Properties";
+    /**
+     * The item for the service properties. The key is {@link ExtendedServiceStateMBean#PROPERTIES}
+     * and type is {@link JmxConstants#PROPERTIES_TYPE}.
+     */
+    Item PROPERTIES_ITEM = new Item(PROPERTIES, "The service properties", JmxConstants.PROPERTIES_TYPE);
+    /**
+     * The Composite Type for the properties of a service. It contains the following items:
+     * <ul>
+     * <li>{@link ServiceStateMBean#IDENTIFIER}</li>
+     * <li>{@link ExtendedServiceStateMBean#PROPERTIES}</li>
+     * </ul>
+     */
+    CompositeType SERVICE_PROPERTIES_TYPE = Item.compositeType("ServiceProperties",
+            "This type encapsulates service properties", IDENTIFIER_ITEM, PROPERTIES_ITEM);
+    /**
+     * The Tabular Type for the properties of services. The row type is
+     * {@link ExtendedServiceStateMBean#SERVICE_PROPERTIES_TYPE}, the index is {@link ServiceStateMBean#IDENTIFIER}.
+     */
+    TabularType SERVICES_PROPERTIES_TYPE = Item.tabularType("ServicesProperties", "The properties of services",
+            SERVICE_PROPERTIES_TYPE, IDENTIFIER);
+    /**
+     * The key GENERATION, used in {@link ExtendedServiceStateMBean#GENERATION_ITEM}
+     */
+    String GENERATION = "Generation";
+    /**
+     * The item for the generation of the services state. The key is {@link ExtendedServiceStateMBean#GENERATION}
+     * and type is <code>SimpleType.LONG</code>.
+     */
+    Item GENERATION_ITEM = new Item(GENERATION, "The generation of the services state", SimpleType.LONG);
+    /**
+     * The key FULL, used in {@link ExtendedServiceStateMBean#FULL_ITEM}
+     */
+    String FULL = "Full";
+    /**
+     * The item for the full state flag. The key is {@link ExtendedServiceStateMBean#FULL}
+     * and type is <code>SimpleType.BOOLEAN</code>.
+     */
+    Item FULL_ITEM = new Item(FULL, "If true, the services table contains all services and replaces the known state",
+            SimpleType.BOOLEAN);
+    /**
+     * The key SERVICES, used in {@link ExtendedServiceStateMBean#SERVICES_ITEM}
+     */
+    String SERVICES = "Services";
+    /**
+     * The item for the changed services. The key is {@link ExtendedServiceStateMBean#SERVICES}
+     * and type is {@link ServiceStateMBean#SERVICES_TYPE}.
+     */
+    Item SERVICES_ITEM = new Item(SERVICES, "The registered or modified services", SERVICES_TYPE);
+    /**
+     * The key UNREGISTERED_SERVICES, used in {@link ExtendedServiceStateMBean#UNREGISTERED_SERVICES_ITEM}
+     */
+    String UNREGISTERED_SERVICES = "UnregisteredServices";
+    /**
+     * The item for the unregistered service identifiers. The key is
+     * {@link ExtendedServiceStateMBean#UNREGISTERED_SERVICES} and type is {@link JmxConstants#LONG_ARRAY_TYPE}.
+     */
+    Item UNREGISTERED_SERVICES_ITEM = new Item(UNREGISTERED_SERVICES, "The unregistered service identifiers",
+            JmxConstants.LONG_ARRAY_TYPE);
+    /**
+     * The Composite Type for the services changes. It contains the following items:
+     * <ul>
+     * <li>{@link ExtendedServiceStateMBean#GENERATION}</li>
+     * <li>{@link ExtendedServiceStateMBean#FULL}</li>
+     * <li>{@link ExtendedServiceStateMBean#SERVICES}</li>
+     * <li>{@link ExtendedServiceStateMBean#UNREGISTERED_SERVICES}</li>
+     * </ul>
+     */
+    CompositeType SERVICES_DELTA_TYPE = Item.compositeType("ServicesDelta", "This type encapsulates services changes",
+            GENERATION_ITEM, FULL_ITEM, SERVICES_ITEM, UNREGISTERED_SERVICES_ITEM);
+
+    /**
+     * Answer a page of services that match the filter. The filter is evaluated by the framework service registry.
+     * Services are ordered by service identifier. The Tabular Data is typed by {@link ServiceStateMBean#SERVICES_TYPE}.
+     *
+     * @param filter the LDAP filter, <code>null</code> or empty string for all services
+     * @param offset the number of matching services to skip
+     * @param limit  the maximum number of services in the page
+     * @return the page of services typed by {@link ServiceStateMBean#SERVICES_TYPE}
+     *
+     * @throws IllegalArgumentException if the filter syntax is wrong, offset is negative or limit is not positive
+     * @throws IOException              if the operation fails
+     */
+    TabularData listServices(String filter, int offset, int limit) throws IOException;
+
+    /**
+     * Answer the properties of the services in one call. The Tabular Data is typed by
+     * {@link ExtendedServiceStateMBean#SERVICES_PROPERTIES_TYPE}. Unknown service identifiers are skipped.
+     *
+     * @param serviceIds the service identifiers
+     * @return the properties of services typed by {@link ExtendedServiceStateMBean#SERVICES_PROPERTIES_TYPE}
+     *
+     * @throws IOException if the operation fails
+     */
+    TabularData getProperties(long[] serviceIds) throws IOException;
+
+    /**
+     * Answer the bundle to service usage relation in coordinate list form. The result contains two parallel arrays:
+     * the first one with the identifiers of using bundles and the second one with the identifiers of used services,
+     * so the bundle <code>result[0][i]</code> uses the service <code>result[1][i]</code>. Pairs are ordered
+     * by service identifier and bundle identifier. The relation is collected in one pass over the service registry
+     * and is best-effort: services registered, unregistered, got or released during the pass may or may not be
+     * reflected, and a service unregistered during the pass has no using bundles.
+     *
+     * @return the using bundle identifiers and the used service identifiers arrays
+     *
+     * @throws IOException if the operation fails
+     */
+    long[][] getServiceUsageMatrix() throws IOException;
+
+    /**
+     * Answer the services that are registered or modified after the given generation. The Composite Data is typed by
+     * {@link ExtendedServiceStateMBean#SERVICES_DELTA_TYPE}: it contains the changed services, the identifiers of the
+     * services unregistered after the given generation and the generation to pass to the next call.
+     * The generation is advanced by service events only, so changes of the using bundles are not tracked.
+     * <p/>
+     * If the given generation is unknown, e.g. it is older than the kept unregistered services history or it is
+     * received from another MBean instance, the {@link ExtendedServiceStateMBean#FULL} flag is set and the table
+     * contains all services. Pass <code>0</code> to get the initial state.
+     *
+     * @param generation the generation returned by the previous call
+     * @return the services changes typed by {@link ExtendedServiceStateMBean#SERVICES_DELTA_TYPE}
+     *
+     * @throws IOException if the operation fails
+     */
+    CompositeData listServicesChangedSince(long generation) throws IOException;
+}
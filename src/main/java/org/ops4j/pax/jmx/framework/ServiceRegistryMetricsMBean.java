@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.framework;
+
+import org.osgi.jmx.Item;
+
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularType;
+import java.io.IOException;
+
+/**
+ * This MBean provides service registry churn metrics: the rates of service events per <code>objectClass</code>
+ * and per registering bundle over the last 1, 5 and 15 minutes.
+ *
+ * @author dmytro.pishchukhin
+ */
+public interface ServiceRegistryMetricsMBean {
+    /**
+     * Service Registry Metrics MBean object name.
+     */
+    String OBJECTNAME = "org.ops4j.pax.jmx:type=serviceRegistryMetrics,version=1.0";
+
+    /**
+     * The key OBJECT_CLASS, used in {@link ServiceRegistryMetricsMBean#OBJECT_CLASS_ITEM}
+     */
+    String OBJECT_CLASS = "objectClass";
+    /**
+     * The item for the service interface name. The key is {@link ServiceRegistryMetricsMBean#OBJECT_CLASS}
+     * and type is <code>SimpleType.STRING</code>.
+     */
+    Item OBJECT_CLASS_ITEM = new Item(OBJECT_CLASS, "The service interface name", SimpleType.STRING);
+    /**
+     * The key BUNDLE_IDENTIFIER, used in {@link ServiceRegistryMetricsMBean#BUNDLE_IDENTIFIER_ITEM}
+     */
+    String BUNDLE_IDENTIFIER = "BundleIdentifier";
+    /**
+     * The item for the registering bundle identifier. The key is {@link ServiceRegistryMetricsMBean#BUNDLE_IDENTIFIER}
+     * and type is <code>SimpleType.LONG</code>.
+     */
+    Item BUNDLE_IDENTIFIER_ITEM = new Item(BUNDLE_IDENTIFIER, "The registering bundle identifier", SimpleType.LONG);
+    /**
+     * The key ONE_MINUTE_RATE, used in {@link ServiceRegistryMetricsMBean#ONE_MINUTE_RATE_ITEM}
+     */
+    String ONE_MINUTE_RATE = "OneMinuteRate";
+    /**
+     * The item for the events per minute over the last minute. The key is
+     * {@link ServiceRegistryMetricsMBean#ONE_MINUTE_RATE} and type is <code>SimpleType.DOUBLE</code>.
+     */
+    Item ONE_MINUTE_RATE_ITEM = new Item(ONE_MINUTE_RATE, "Events per minute over the last minute", SimpleType.DOUBLE);
+    /**
+     * The key FIVE_MINUTE_RATE, used in {@link ServiceRegistryMetricsMBean#FIVE_MINUTE_RATE_ITEM}
+     */
+    String FIVE_MINUTE_RATE = "FiveMinuteRate";
+    /**
+     * The item for the events per minute over the last 5 minutes. The key is
+     * {@link ServiceRegistryMetricsMBean#FIVE_MINUTE_RATE} and type is <code>SimpleType.DOUBLE</code>.
+     */
+    Item FIVE_MINUTE_RATE_ITEM = new Item(FIVE_MINUTE_RATE, "Events per minute over the last 5 minutes", SimpleType.DOUBLE);
+    /**
+     * The key FIFTEEN_MINUTE_RATE, used in {@link ServiceRegistryMetricsMBean#FIFTEEN_MINUTE_RATE_ITEM}
+     */
+    String FIFTEEN_MINUTE_RATE = "FifteenMinuteRate";
+    /**
+     * The item for the events per minute over the last 15 minutes. The key is
+     * {@link ServiceRegistryMetricsMBean#FIFTEEN_MINUTE_RATE} and type is <code>SimpleType.DOUBLE</code>.
+     */
+    Item FIFTEEN_MINUTE_RATE_ITEM = new Item(FIFTEEN_MINUTE_RATE, "Events per minute over the last 15 minutes",
+            SimpleType.DOUBLE);
+    /**
+     * The key REGISTERED, used in {@link ServiceRegistryMetricsMBean#REGISTERED_ITEM}
+     */
+    String REGISTERED = "Registered";
+    /**
+     * The item for the number of REGISTERED events over the last 15 minutes. The key is
+     * {@link ServiceRegistryMetricsMBean#REGISTERED} and type is <code>SimpleType.LONG</code>.
+     */
+    Item REGISTERED_ITEM = new Item(REGISTERED, "REGISTERED events over the last 15 minutes", SimpleType.LONG);
+    /**
+     * The key MODIFIED, used in {@link ServiceRegistryMetricsMBean#MODIFIED_ITEM}
+     */
+    String MODIFIED = "Modified";
+    /**
+     * The item for the number of MODIFIED events over the last 15 minutes. The key is
+     * {@link ServiceRegistryMetricsMBean#MODIFIED} and type is <code>SimpleType.LONG</code>.
+     */
+    Item MODIFIED_ITEM = new Item(MODIFIED, "MODIFIED events over the last 15 minutes", SimpleType.LONG);
+    /**
+     * The key UNREGISTERING, used in {@link ServiceRegistryMetricsMBean#UNREGISTERING_ITEM}
+     */
+    String UNREGISTERING = "Unregistering";
+    /**
+     * The item for the number of UNREGISTERING events over the last 15 minutes. The key is
+     * {@link ServiceRegistryMetricsMBean#UNREGISTERING} and type is <code>SimpleType.LONG</code>.
+     */
+    Item UNREGISTERING_ITEM = new Item(UNREGISTERING, "UNREGISTERING events over the last 15 minutes", SimpleType.LONG);
+
+    /**
+     * The Composite Type for the metrics of a service interface. It contains the following items:
+     * <ul>
+     * <li>{@link ServiceRegistryMetricsMBean#OBJECT_CLASS}</li>
+     * <li>{@link ServiceRegistryMetricsMBean#ONE_MINUTE_RATE}</li>
+     * <li>{@link ServiceRegistryMetricsMBean#FIVE_MINUTE_RATE}</li>
+     * <li>{@link ServiceRegistryMetricsMBean#FIFTEEN_MINUTE_RATE}</li>
+     * <li>{@link ServiceRegistryMetricsMBean#REGISTERED}</li>
+     * <li>{@link ServiceRegistryMetricsMBean#MODIFIED}</li>
+     * <li>{@link ServiceRegistryMetricsMBean#UNREGISTERING}</li>
+     * </ul>
+     */
+    CompositeType OBJECT_CLASS_METRICS_TYPE = Item.compositeType("ObjectClassMetrics",
+            "This type encapsulates service events metrics of a service interface", OBJECT_CLASS_ITEM,
+            ONE_MINUTE_RATE_ITEM, FIVE_MINUTE_RATE_ITEM, FIFTEEN_MINUTE_RATE_ITEM,
+            REGISTERED_ITEM, MODIFIED_ITEM, UNREGISTERING_ITEM);
+    /**
+     * The Tabular Type for the metrics of service interfaces. The row type is
+     * {@link ServiceRegistryMetricsMBean#OBJECT_CLASS_METRICS_TYPE}, the index is {@link ServiceRegistryMetricsMBean#OBJECT_CLASS}.
+     */
+    TabularType OBJECT_CLASSES_METRICS_TYPE = Item.tabularType("ObjectClassesMetrics",
+            "Service events metrics of service interfaces", OBJECT_CLASS_METRICS_TYPE, OBJECT_CLASS);
+    /**
+     * The Composite Type for the metrics of a registering bundle. It contains the following items:
+     * <ul>
+     * <li>{@link ServiceRegistryMetricsMBean#BUNDLE_IDENTIFIER}</li>
+     * <li>{@link ServiceRegistryMetricsMBean#ONE_MINUTE_RATE}</li>
+     * <li>{@link ServiceRegistryMetricsMBean#FIVE_MINUTE_RATE}</li>
+     * <li>{@link ServiceRegistryMetricsMBean#FIFTEEN_MINUTE_RATE}</li>
+     * <li>{@link ServiceRegistryMetricsMBean#REGISTERED}</li>
+     * <li>{@link ServiceRegistryMetricsMBean#MODIFIED}</li>
+     * <li>{@link ServiceRegistryMetricsMBean#UNREGISTERING}</li>
+     * </ul>
+     */
+    CompositeType BUNDLE_METRICS_TYPE = Item.compositeType("BundleMetrics",
+            "This type encapsulates service events metrics of a registering bundle", BUNDLE_IDENTIFIER_ITEM,
+            ONE_MINUTE_RATE_ITEM, FIVE_MINUTE_RATE_ITEM, FIFTEEN_MINUTE_RATE_ITEM,
+            REGISTERED_ITEM, MODIFIED_ITEM, UNREGISTERING_ITEM);
+    /**
+     * The Tabular Type for the metrics of registering bundles. The row type is
+     * {@link ServiceRegistryMetricsMBean#BUNDLE_METRICS_TYPE}, the index is {@link ServiceRegistryMetricsMBean#BUNDLE_IDENTIFIER}.
+     */
+    TabularType BUNDLES_METRICS_TYPE = Item.tabularType("BundlesMetrics",
+            "Service events metrics of registering bundles", BUNDLE_METRICS_TYPE, BUNDLE_IDENTIFIER);
+
+    /**
+     * Answer service events metrics per service interface. Service interfaces without events over the last
+     * 15 minutes are not listed. The Tabular Data is typed by {@link ServiceRegistryMetricsMBean#OBJECT_CLASSES_METRICS_TYPE}.
+     *
+     * @return the metrics of service interfaces typed by {@link ServiceRegistryMetricsMBean#OBJECT_CLASSES_METRICS_TYPE}
+     *
+     * @throws IOException if the operation fails
+     */
+    TabularData listObjectClassMetrics() throws IOException;
+
+    /**
+     * Answer service events metrics per registering bundle. Bundles without events over the last
+     * 15 minutes are not listed. The Tabular Data is typed by {@link ServiceRegistryMetricsMBean#BUNDLES_METRICS_TYPE}.
+     *
+     * @return the metrics of registering bundles typed by {@link ServiceRegistryMetricsMBean#BUNDLES_METRICS_TYPE}
+     *
+     * @throws IOException if the operation fails
+     */
+    TabularData listBundleMetrics() throws IOException;
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ops4j.pax.jmx.beans.LogVisitor;
+import org.ops4j.pax.jmx.beans.OsgiVisitor;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.service.packageadmin.ExportedPackage;
+import org.osgi.service.packageadmin.PackageAdmin;
+import org.osgi.service.packageadmin.RequiredBundle;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author dpishchukhin
+ */
+public class BundleDependencyGraphTest {
+    // 2 imports a package of 1, 3 requires 2, 4 is a fragment of 2
+    private Bundle bundle1;
+    private Bundle bundle2;
+    private List<String> invocations;
+    private BundleDependencyGraph dependencyGraph;
+
+    @Before
+    public void setUp() throws Exception {
+        bundle1 = Stubs.bundle(1);
+        bundle2 = Stubs.bundle(2);
+        Bundle bundle3 = Stubs.bundle(3);
+        Bundle bundle4 = Stubs.bundle(4);
+        ExportedPackage exportedPackage = Stubs.stub(ExportedPackage.class, "getExportingBundle", bundle1,
+                "getImportingBundles", new Bundle[]{bundle2});
+        RequiredBundle requiredBundle = Stubs.stub(RequiredBundle.class, "getBundle", bundle2,
+                "getRequiringBundles", new Bundle[]{bundle3});
+        invocations = new ArrayList<String>();
+        PackageAdmin packageAdmin = Stubs.stub(PackageAdmin.class, invocations,
+                "getExportedPackages", new ExportedPackage[]{exportedPackage},
+                "getRequiredBundles", new RequiredBundle[]{requiredBundle},
+                "getFragments", Stubs.byArgument(bundle2, new Bundle[]{bundle4}));
+        dependencyGraph = new BundleDependencyGraph();
+        dependencyGraph.setVisitor(Stubs.stub(OsgiVisitor.class,
+                "getBundle", Stubs.byArgument(1L, bundle1, 2L, bundle2, 3L, bundle3, 4L, bundle4),
+                "getBundles", new Bundle[]{bundle1, bundle2, bundle3, bundle4},
+                "getPackageAdmin", packageAdmin));
+        dependencyGraph.setLogVisitor(Stubs.stub(LogVisitor.class));
+    }
+
+    @Test
+    public void testGraph() throws Exception {
+        Assert.assertArrayEquals(new long[]{1, 2}, dependencyGraph.getDependencies(3));
+        Assert.assertArrayEquals(new long[]{1, 2}, dependencyGraph.getDependencies(4));
+        Assert.assertArrayEquals(new long[]{2, 3, 4}, dependencyGraph.getDependents(1));
+        Assert.assertArrayEquals(new long[]{2, 3, 4}, dependencyGraph.getRefreshClosure(new long[]{4}));
+    }
+
+    @Test
+    public void testWrongBundle() throws Exception {
+        try {
+            dependencyGraph.getDependencies(5);
+            Assert.fail("IllegalArgumentException is expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            dependencyGraph.getRefreshClosure(new long[]{1, 5});
+            Assert.fail("IllegalArgumentException is expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testPackageAdminIsNotAvailable() throws Exception {
+        dependencyGraph.setVisitor(Stubs.stub(OsgiVisitor.class, "getBundle", Stubs.byArgument(1L, bundle1)));
+        try {
+            dependencyGraph.getDependents(1);
+            Assert.fail("IOException is expected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRebuild() throws Exception {
+        dependencyGraph.getDependencies(3);
+        dependencyGraph.getDependents(1);
+        Assert.assertEquals(1, Collections.frequency(invocations, "getExportedPackages"));
+
+        dependencyGraph.bundleChanged(new BundleEvent(BundleEvent.STARTED, bundle2));
+        dependencyGraph.getDependents(1);
+        Assert.assertEquals(1, Collections.frequency(invocations, "getExportedPackages"));
+
+        dependencyGraph.bundleChanged(new BundleEvent(BundleEvent.RESOLVED, bundle2));
+        dependencyGraph.getDependents(1);
+        Assert.assertEquals(2, Collections.frequency(invocations, "getExportedPackages"));
+
+        dependencyGraph.frameworkEvent(new FrameworkEvent(FrameworkEvent.PACKAGES_REFRESHED, bundle1, null));
+        dependencyGraph.getDependents(1);
+        Assert.assertEquals(3, Collections.frequency(invocations, "getExportedPackages"));
+    }
+}
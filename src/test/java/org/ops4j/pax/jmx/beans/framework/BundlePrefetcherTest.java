@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author dpishchukhin
+ */
+public class BundlePrefetcherTest {
+    private File sources;
+    private File temp;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        sources = createDirectory("sources");
+        temp = createDirectory("temp");
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        deleteDirectory(sources);
+        deleteDirectory(temp);
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+        String[] urls = new String[5];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = createSource("bundle" + i);
+        }
+        BundlePrefetcher prefetcher = new BundlePrefetcher(urls, executor, 2, temp);
+        try {
+            for (int i = 0; i < urls.length; i++) {
+                Assert.assertEquals("bundle" + i, read(prefetcher.next()));
+            }
+            Assert.assertEquals(0, temp.list().length);
+        } finally {
+            prefetcher.close();
+        }
+    }
+
+    @Test
+    public void testError() throws Exception {
+        String[] urls = new String[]{createSource("bundle0"), new File(sources, "missing").toURI().toString(),
+                createSource("bundle2")};
+        BundlePrefetcher prefetcher = new BundlePrefetcher(urls, executor, 3, temp);
+        InputStream stream = prefetcher.next();
+        try {
+            Assert.assertEquals("bundle0", read(stream));
+            prefetcher.next();
+            Assert.fail("Download error is expected");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            prefetcher.close();
+        }
+        // downloads that were in progress on close delete their files themselves
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, temp.list().length);
+    }
+
+    private File createDirectory(String name) throws IOException {
+        File directory = File.createTempFile(name, "");
+        Assert.assertTrue(directory.delete());
+        Assert.assertTrue(directory.mkdirs());
+        return directory;
+    }
+
+    private void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private String createSource(String content) throws IOException {
+        File file = File.createTempFile("bundle", ".jar", sources);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+        return file.toURI().toString();
+    }
+
+    private String read(InputStream stream) throws IOException {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+            return reader.readLine();
+        } finally {
+            stream.close();
+        }
+    }
+}
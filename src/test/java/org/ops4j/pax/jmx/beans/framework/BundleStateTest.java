@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ops4j.pax.jmx.beans.LogVisitor;
+import org.ops4j.pax.jmx.beans.OsgiVisitor;
+import org.osgi.framework.Bundle;
+import org.osgi.jmx.framework.BundleStateMBean;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.util.Hashtable;
+
+/**
+ * @author dpishchukhin
+ */
+public class BundleStateTest {
+    private BundleState bundleState;
+
+    @Before
+    public void setUp() throws Exception {
+        Bundle bundle = Stubs.bundle(1, "getHeaders", new Stubs.Answer() {
+            public Object answer(Object[] args) {
+                if (args == null) {
+                    return headers("localized");
+                } else if ("".equals(args[0])) {
+                    return headers("%name");
+                }
+                return headers("localized " + args[0]);
+            }
+        });
+        bundleState = new BundleState();
+        bundleState.setVisitor(Stubs.stub(OsgiVisitor.class, "getBundle", Stubs.byArgument(1L, bundle)));
+        bundleState.setLogVisitor(Stubs.stub(LogVisitor.class));
+    }
+
+    @Test
+    public void testHeaders() throws Exception {
+        // raw and default locale headers are cached with different keys
+        Assert.assertEquals("%name", getName(bundleState.getHeaders(1, "")));
+        Assert.assertEquals("localized", getName(bundleState.getHeaders(1)));
+        Assert.assertEquals("localized", getName(bundleState.getHeaders(1, null)));
+        Assert.assertEquals("%name", getName(bundleState.getHeaders(1, "")));
+        Assert.assertEquals("localized de", getName(bundleState.getHeaders(1, "de")));
+    }
+
+    private static Hashtable<String, String> headers(String name) {
+        Hashtable<String, String> headers = new Hashtable<String, String>();
+        headers.put("Bundle-Name", name);
+        return headers;
+    }
+
+    private static Object getName(TabularData headers) {
+        CompositeData header = headers.get(new Object[]{"Bundle-Name"});
+        return header.get(BundleStateMBean.VALUE);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * @author dpishchukhin
+ */
+public class ChangeTrackerTest {
+    @Test
+    public void testChangesSince() throws Exception {
+        ChangeTracker tracker = new ChangeTracker(10);
+        long start = tracker.getGeneration();
+
+        ChangeTracker.Changes changes = tracker.getChangesSince(start);
+        Assert.assertFalse(changes.isFull());
+        Assert.assertTrue(changes.getChanged().isEmpty());
+        Assert.assertEquals(0, changes.getRemoved().length);
+
+        tracker.changed(1);
+        tracker.changed(2);
+        long generation = tracker.getGeneration();
+        tracker.changed(3);
+        tracker.removed(2);
+        tracker.changed(1);
+
+        changes = tracker.getChangesSince(start);
+        Assert.assertFalse(changes.isFull());
+        Assert.assertEquals(new HashSet<Long>(Arrays.asList(1L, 3L)), changes.getChanged());
+        Assert.assertArrayEquals(new long[]{2}, changes.getRemoved());
+
+        changes = tracker.getChangesSince(generation);
+        Assert.assertEquals(new HashSet<Long>(Arrays.asList(1L, 3L)), changes.getChanged());
+        Assert.assertArrayEquals(new long[]{2}, changes.getRemoved());
+
+        changes = tracker.getChangesSince(tracker.getGeneration());
+        Assert.assertFalse(changes.isFull());
+        Assert.assertTrue(changes.getChanged().isEmpty());
+        Assert.assertEquals(0, changes.getRemoved().length);
+    }
+
+    @Test
+    public void testUnknownGeneration() throws Exception {
+        ChangeTracker tracker = new ChangeTracker(10);
+        long start = tracker.getGeneration();
+        tracker.changed(1);
+
+        Assert.assertTrue(tracker.getChangesSince(start - 1).isFull());
+        Assert.assertTrue(tracker.getChangesSince(tracker.getGeneration() + 1).isFull());
+    }
+
+    @Test
+    public void testRemovedLimit() throws Exception {
+        ChangeTracker tracker = new ChangeTracker(2);
+        long start = tracker.getGeneration();
+        tracker.removed(1);
+        long generation = tracker.removed(2);
+        tracker.removed(3);
+
+        Assert.assertTrue(tracker.getChangesSince(start).isFull());
+        ChangeTracker.Changes changes = tracker.getChangesSince(generation - 1);
+        Assert.assertFalse(changes.isFull());
+        Assert.assertArrayEquals(new long[]{2, 3}, changes.getRemoved());
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author dpishchukhin
+ */
+public class DependencyGraphTest {
+    // 1 <- 2 <- 3, 1 <- 4, 5 is a fragment of 2, 6 is not wired
+    private DependencyGraph createGraph() {
+        return new DependencyGraph(new long[]{6, 5, 4, 3, 2, 1},
+                new long[][]{{2, 1}, {3, 2}, {4, 1}, {3, 2}, {1, 1}},
+                new long[][]{{5, 2}});
+    }
+
+    @Test
+    public void testDependencies() throws Exception {
+        DependencyGraph graph = createGraph();
+        Assert.assertArrayEquals(new long[]{1, 2}, graph.getDependencies(3));
+        Assert.assertArrayEquals(new long[]{1, 2}, graph.getDependencies(5));
+        Assert.assertArrayEquals(new long[0], graph.getDependencies(1));
+        Assert.assertArrayEquals(new long[0], graph.getDependencies(6));
+    }
+
+    @Test
+    public void testDependents() throws Exception {
+        DependencyGraph graph = createGraph();
+        Assert.assertArrayEquals(new long[]{2, 3, 4, 5}, graph.getDependents(1));
+        Assert.assertArrayEquals(new long[]{3, 5}, graph.getDependents(2));
+        Assert.assertArrayEquals(new long[0], graph.getDependents(3));
+        Assert.assertArrayEquals(new long[0], graph.getDependents(7));
+    }
+
+    @Test
+    public void testRefreshClosure() throws Exception {
+        DependencyGraph graph = createGraph();
+        Assert.assertArrayEquals(new long[]{2, 3, 5}, graph.getRefreshClosure(new long[]{5}));
+        Assert.assertArrayEquals(new long[]{3, 4, 6}, graph.getRefreshClosure(new long[]{4, 3, 6}));
+        Assert.assertArrayEquals(new long[]{1, 2, 3, 4, 5}, graph.getRefreshClosure(new long[]{1}));
+        Assert.assertArrayEquals(new long[]{7}, graph.getRefreshClosure(new long[]{7}));
+        Assert.assertTrue(graph.contains(6));
+        Assert.assertFalse(graph.contains(7));
+    }
+}
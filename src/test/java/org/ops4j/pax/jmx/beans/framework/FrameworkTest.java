@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ops4j.pax.jmx.beans.LogVisitor;
+import org.ops4j.pax.jmx.beans.OsgiVisitor;
+import org.osgi.framework.Bundle;
+import org.osgi.jmx.framework.FrameworkMBean;
+import org.osgi.service.packageadmin.PackageAdmin;
+import org.osgi.service.startlevel.StartLevel;
+
+import javax.management.openmbean.CompositeData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author dpishchukhin
+ */
+public class FrameworkTest {
+    private List<String> invocations1;
+    private List<String> invocations3;
+    private Bundle bundle1;
+    private Bundle bundle2;
+    private Bundle bundle3;
+    private Framework framework;
+
+    @Before
+    public void setUp() throws Exception {
+        invocations1 = new ArrayList<String>();
+        invocations3 = new ArrayList<String>();
+        bundle1 = Stubs.bundle(1, invocations1);
+        bundle2 = Stubs.bundle(2, "start", new IllegalStateException("Bundle is uninstalled"));
+        bundle3 = Stubs.bundle(3, invocations3);
+        framework = new Framework();
+        framework.setLogVisitor(Stubs.stub(LogVisitor.class));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        framework.uninit();
+    }
+
+    @Test
+    public void testStartBundles() throws Exception {
+        framework.setVisitor(createVisitor(false));
+        CompositeData result = framework.startBundles(new long[]{1, 3});
+        Assert.assertTrue((Boolean) result.get(FrameworkMBean.SUCCESS));
+        Assert.assertArrayEquals(new Long[]{1L, 3L}, (Long[]) result.get(FrameworkMBean.COMPLETED));
+        // bundles are started, not updated
+        Assert.assertTrue(invocations1.contains("start"));
+        Assert.assertFalse(invocations1.contains("update"));
+        Assert.assertTrue(invocations3.contains("start"));
+    }
+
+    @Test
+    public void testStartBundlesError() throws Exception {
+        framework.setVisitor(createVisitor(false));
+        CompositeData result = framework.startBundles(new long[]{1, 2, 3});
+        assertError(result, 2, new Long[]{1L}, new Long[]{3L});
+        Assert.assertFalse(invocations3.contains("start"));
+
+        result = framework.startBundles(new long[]{5, 1});
+        assertError(result, 5, new Long[0], new Long[]{1L});
+    }
+
+    @Test
+    public void testStartBundlesInParallel() throws Exception {
+        framework.setVisitor(createVisitor(true));
+        CompositeData result = framework.startBundles(new long[]{1, 3});
+        Assert.assertTrue((Boolean) result.get(FrameworkMBean.SUCCESS));
+        Assert.assertEquals(Arrays.asList(1L, 3L), sorted((Long[]) result.get(FrameworkMBean.COMPLETED)));
+        Assert.assertTrue(invocations1.contains("start"));
+        Assert.assertFalse(invocations1.contains("update"));
+    }
+
+    @Test
+    public void testStartBundlesInParallelError() throws Exception {
+        framework.setVisitor(createVisitor(true));
+        CompositeData result = framework.startBundles(new long[]{1, 2});
+        Assert.assertFalse((Boolean) result.get(FrameworkMBean.SUCCESS));
+        Assert.assertEquals(2L, result.get(FrameworkMBean.BUNDLE_IN_ERROR));
+        Assert.assertEquals("Bundle is uninstalled", result.get(FrameworkMBean.ERROR));
+
+        // wrong ID is reported before any bundle is started
+        invocations1.clear();
+        result = framework.startBundles(new long[]{1, 5, 3});
+        assertError(result, 5, new Long[0], new Long[]{1L, 3L});
+        Assert.assertFalse(invocations1.contains("start"));
+    }
+
+    private OsgiVisitor createVisitor(boolean parallel) {
+        return Stubs.stub(OsgiVisitor.class,
+                "getBundle", Stubs.byArgument(1L, bundle1, 2L, bundle2, 3L, bundle3),
+                "getBundles", new Bundle[]{bundle1, bundle2, bundle3},
+                "getProperty", Stubs.byArgument(Framework.START_PARALLEL_PROPS, String.valueOf(parallel)),
+                "getPackageAdmin", Stubs.stub(PackageAdmin.class),
+                "getStartLevel", Stubs.stub(StartLevel.class));
+    }
+
+    private static void assertError(CompositeData result, long bundleInError, Long[] completed, Long[] remaining) {
+        Assert.assertFalse((Boolean) result.get(FrameworkMBean.SUCCESS));
+        Assert.assertEquals(bundleInError, result.get(FrameworkMBean.BUNDLE_IN_ERROR));
+        Assert.assertNotNull(result.get(FrameworkMBean.ERROR));
+        Assert.assertArrayEquals(completed, (Long[]) result.get(FrameworkMBean.COMPLETED));
+        Assert.assertArrayEquals(remaining, (Long[]) result.get(FrameworkMBean.REMAINING));
+    }
+
+    private static List<Long> sorted(Long[] ids) {
+        List<Long> result = new ArrayList<Long>(Arrays.asList(ids));
+        Collections.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ops4j.pax.jmx.beans.LogVisitor;
+import org.ops4j.pax.jmx.beans.OsgiVisitor;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.Version;
+import org.osgi.service.packageadmin.ExportedPackage;
+import org.osgi.service.packageadmin.PackageAdmin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author dpishchukhin
+ */
+public class PackageIndexTest {
+    private Bundle bundle1;
+    private Bundle bundle2;
+    private ExportedPackage[] exportedPackages;
+
+    @Before
+    public void setUp() throws Exception {
+        bundle1 = Stubs.bundle(1);
+        bundle2 = Stubs.bundle(2);
+        exportedPackages = new ExportedPackage[]{
+                createPackage("com.acme.b", "1.0.0", bundle1),
+                createPackage("com.acme", "2.0.0", bundle1),
+                createPackage("com.acme", "1.0.0", bundle1),
+                createPackage("com.acme", "1.0.0", bundle2),
+                createPackage("com.acmefoo", "1.0.0", bundle2),
+                createPackage("com.other", "1.0.0", bundle2),
+        };
+    }
+
+    @Test
+    public void testFindPackages() throws Exception {
+        PackageIndex index = new PackageIndex(exportedPackages);
+        Assert.assertEquals(list("com.acme;1.0.0", "com.acme;2.0.0", "com.acme.b;1.0.0", "com.acmefoo;1.0.0",
+                "com.other;1.0.0"), names(index.getPackages()));
+        // the prefix is a literal string prefix
+        Assert.assertEquals(list("com.acme;1.0.0", "com.acme;2.0.0", "com.acme.b;1.0.0", "com.acmefoo;1.0.0"),
+                names(index.findPackages("com.acme")));
+        Assert.assertEquals(list("com.acme.b;1.0.0"), names(index.findPackages("com.acme.")));
+        Assert.assertEquals(list(), names(index.findPackages("org")));
+        Assert.assertEquals(names(index.getPackages()), names(index.findPackages("")));
+    }
+
+    @Test
+    public void testGetPackages() throws Exception {
+        PackageIndex index = new PackageIndex(exportedPackages);
+        Assert.assertEquals(2, index.getPackages("com.acme", new Version("1.0.0")).length);
+        Assert.assertEquals(0, index.getPackages("com.acme", new Version("3.0.0")).length);
+        Assert.assertSame(exportedPackages[3], index.getPackage("com.acme", new Version("1.0.0"), bundle2));
+        Assert.assertNotNull(index.getPackage("com.acme", new Version("1.0.0"), null));
+        Assert.assertNull(index.getPackage("com.acme", new Version("2.0.0"), bundle2));
+        Assert.assertEquals(0, new PackageIndex(null).getPackages().size());
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        List<String> invocations = new ArrayList<String>();
+        PackageAdmin packageAdmin = Stubs.stub(PackageAdmin.class, invocations,
+                "getExportedPackages", exportedPackages);
+        PackageState packageState = new PackageState();
+        packageState.setVisitor(Stubs.stub(OsgiVisitor.class, "getPackageAdmin", packageAdmin));
+        packageState.setLogVisitor(Stubs.stub(LogVisitor.class));
+
+        packageState.listPackages();
+        packageState.listPackages("com.acme", null, 0, 10);
+        Assert.assertEquals(1, Collections.frequency(invocations, "getExportedPackages"));
+
+        packageState.bundleChanged(new BundleEvent(BundleEvent.STARTED, bundle1));
+        packageState.listPackages();
+        Assert.assertEquals(1, Collections.frequency(invocations, "getExportedPackages"));
+
+        packageState.bundleChanged(new BundleEvent(BundleEvent.RESOLVED, bundle1));
+        packageState.listPackages();
+        Assert.assertEquals(2, Collections.frequency(invocations, "getExportedPackages"));
+
+        packageState.bundleChanged(new BundleEvent(BundleEvent.UNRESOLVED, bundle1));
+        packageState.listPackages();
+        Assert.assertEquals(3, Collections.frequency(invocations, "getExportedPackages"));
+
+        packageState.frameworkEvent(new FrameworkEvent(FrameworkEvent.PACKAGES_REFRESHED, bundle1, null));
+        packageState.listPackages();
+        Assert.assertEquals(4, Collections.frequency(invocations, "getExportedPackages"));
+    }
+
+    private static ExportedPackage createPackage(String name, String version, Bundle exportingBundle) {
+        return Stubs.stub(ExportedPackage.class, "getName", name, "getVersion", new Version(version),
+                "getExportingBundle", exportingBundle);
+    }
+
+    private static List<String> names(List<ExportedPackage[]> packages) {
+        List<String> result = new ArrayList<String>();
+        for (ExportedPackage[] group : packages) {
+            result.add(group[0].getName() + ";" + group[0].getVersion());
+        }
+        return result;
+    }
+
+    private static List<String> list(String... names) {
+        List<String> result = new ArrayList<String>();
+        Collections.addAll(result, names);
+        return result;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @author dpishchukhin
+ */
+public class SlidingWindowCounterTest {
+    @Test
+    public void testCount() throws Exception {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1000, 5);
+        counter.increment(0);
+        counter.increment(500);
+        Assert.assertEquals(2, counter.getCount(900, 1000));
+        Assert.assertEquals(0, counter.getCount(1000, 1000));
+
+        counter.increment(1500);
+        counter.increment(4999);
+        counter.increment(5000);
+        counter.increment(7000);
+
+        Assert.assertEquals(1, counter.getCount(7000, 1000));
+        Assert.assertEquals(3, counter.getCount(7000, 5000));
+        Assert.assertEquals(3, counter.getCount(7000, 100000));
+        Assert.assertEquals(0, counter.getCount(20000, 5000));
+    }
+
+    @Test
+    public void testOldEvent() throws Exception {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1000, 5);
+        counter.increment(7000);
+        // the bucket is already used by a newer time slot
+        counter.increment(1000);
+        Assert.assertEquals(1, counter.getCount(7000, 5000));
+    }
+
+    @Test
+    public void testCoveredMillis() throws Exception {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1000, 5);
+        // 2 completed buckets and a quarter of the current one
+        Assert.assertEquals(2250, counter.getCoveredMillis(7250, 3000));
+        Assert.assertEquals(4250, counter.getCoveredMillis(7250, 100000));
+        Assert.assertEquals(1, counter.getCoveredMillis(7000, 1000));
+    }
+
+    @Test
+    public void testConcurrentRollOver() throws Exception {
+        final SlidingWindowCounter counter = new SlidingWindowCounter(1000, 5);
+        counter.increment(0);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    // every thread reuses the same bucket of the expired slot
+                    for (int j = 0; j < 1000; j++) {
+                        counter.increment(6000);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(threads.length * 1000, counter.getCount(6000, 1000));
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import org.osgi.framework.Bundle;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dynamic proxy stubs of OSGi interfaces for tests. A stub answers configured methods by name, records
+ * invoked method names and returns <code>null</code>, <code>false</code> or <code>0</code> for other methods.
+ *
+ * @author dpishchukhin
+ */
+public class Stubs {
+    /**
+     * Answer that depends on method arguments
+     */
+    public interface Answer {
+        Object answer(Object[] args) throws Exception;
+    }
+
+    private Stubs() {
+    }
+
+    /**
+     * Create stub
+     *
+     * @param type    stubbed interface
+     * @param answers method names followed by their answers, values or {@link Answer} instances
+     * @return stub
+     */
+    public static <T> T stub(Class<T> type, Object... answers) {
+        return stub(type, new ArrayList<String>(), answers);
+    }
+
+    /**
+     * Create stub that records invoked methods
+     *
+     * @param type        stubbed interface
+     * @param invocations list to record invoked method names
+     * @param answers     method names followed by their answers, values or {@link Answer} instances
+     * @return stub
+     */
+    public static <T> T stub(Class<T> type, final List<String> invocations, Object... answers) {
+        final Map<String, Object> answersByName = new HashMap<String, Object>();
+        for (int i = 0; i < answers.length; i += 2) {
+            answersByName.put((String) answers[i], answers[i + 1]);
+        }
+        return type.cast(Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class[]{type},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String name = method.getName();
+                        if ("equals".equals(name) && args != null && args.length == 1) {
+                            return proxy == args[0];
+                        } else if ("hashCode".equals(name) && args == null) {
+                            return System.identityHashCode(proxy);
+                        } else if ("toString".equals(name) && args == null) {
+                            return "stub of " + method.getDeclaringClass().getName() + answersByName;
+                        }
+                        invocations.add(name);
+                        Object answer = answersByName.get(name);
+                        if (answer instanceof Answer) {
+                            return ((Answer) answer).answer(args);
+                        }
+                        if (answer instanceof Exception) {
+                            throw (Exception) answer;
+                        }
+                        if (answer == null) {
+                            return getDefault(method.getReturnType());
+                        }
+                        return answer;
+                    }
+                }));
+    }
+
+    /**
+     * Create bundle stub
+     *
+     * @param id      bundle ID
+     * @param answers other method names followed by their answers
+     * @return bundle stub
+     */
+    public static Bundle bundle(long id, Object... answers) {
+        return bundle(id, new ArrayList<String>(), answers);
+    }
+
+    /**
+     * Create bundle stub that records invoked methods
+     *
+     * @param id          bundle ID
+     * @param invocations list to record invoked method names
+     * @param answers     other method names followed by their answers
+     * @return bundle stub
+     */
+    public static Bundle bundle(long id, List<String> invocations, Object... answers) {
+        List<Object> result = new ArrayList<Object>(Arrays.asList(answers));
+        result.add("getBundleId");
+        result.add(id);
+        return stub(Bundle.class, invocations, result.toArray());
+    }
+
+    /**
+     * Create answer that maps the first argument to a value
+     *
+     * @param keysAndValues arguments followed by their values
+     * @return answer
+     */
+    public static Answer byArgument(final Object... keysAndValues) {
+        return new Answer() {
+            public Object answer(Object[] args) {
+                for (int i = 0; i < keysAndValues.length; i += 2) {
+                    if (keysAndValues[i] == null ? args[0] == null : keysAndValues[i].equals(args[0])) {
+                        return keysAndValues[i + 1];
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    private static Object getDefault(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
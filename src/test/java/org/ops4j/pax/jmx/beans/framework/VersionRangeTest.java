@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.framework.Version;
+
+/**
+ * @author dpishchukhin
+ */
+public class VersionRangeTest {
+    @Test
+    public void testIncludes() throws Exception {
+        VersionRange range = new VersionRange("[1.0,2.0)");
+        Assert.assertFalse(range.includes(new Version("0.9")));
+        Assert.assertTrue(range.includes(new Version("1.0.0")));
+        Assert.assertTrue(range.includes(new Version("1.9.9.qualifier")));
+        Assert.assertFalse(range.includes(new Version("2.0")));
+
+        range = new VersionRange("(1.0, 2.0]");
+        Assert.assertFalse(range.includes(new Version("1.0")));
+        Assert.assertTrue(range.includes(new Version("1.0.1")));
+        Assert.assertTrue(range.includes(new Version("2.0")));
+
+        range = new VersionRange("1.5");
+        Assert.assertFalse(range.includes(new Version("1.4")));
+        Assert.assertTrue(range.includes(new Version("1.5")));
+        Assert.assertTrue(range.includes(new Version("10.0")));
+
+        // the floor equal to the ceiling is a valid, possibly empty range
+        range = new VersionRange("[1.0,1.0]");
+        Assert.assertTrue(range.includes(new Version("1.0")));
+        range = new VersionRange("[1.0,1.0)");
+        Assert.assertFalse(range.includes(new Version("1.0")));
+    }
+
+    @Test
+    public void testWrongRange() throws Exception {
+        String[] ranges = {"[1.0", "[1.0,2.0", "1.0,2.0)", "[a,b)", "[2.0,1.0)", "(1.0.1,1.0]"};
+        for (String range : ranges) {
+            try {
+                new VersionRange(range);
+                Assert.fail(range);
+            } catch (IllegalArgumentException e) {
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2012 Dmytro Pishchukhin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.pax.jmx.beans.framework;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Version;
+import org.osgi.service.packageadmin.ExportedPackage;
+import org.osgi.service.packageadmin.PackageAdmin;
+import org.osgi.service.packageadmin.RequiredBundle;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * @author dpishchukhin
+ */
+public class WiringSnapshotTest {
+    // 2 and 3 import packages of 1, 3 requires 1, 5 is a fragment of 4
+    private Bundle bundle1;
+    private Bundle bundle2;
+    private Bundle bundle3;
+    private Bundle bundle4;
+    private Bundle bundle5;
+    private Bundle[] bundles;
+    private PackageAdmin packageAdmin;
+
+    @Before
+    public void setUp() throws Exception {
+        bundle1 = Stubs.bundle(1);
+        bundle2 = Stubs.bundle(2);
+        bundle3 = Stubs.bundle(3);
+        bundle4 = Stubs.bundle(4);
+        bundle5 = Stubs.bundle(5);
+        bundles = new Bundle[]{bundle1, bundle2, bundle3, bundle4, bundle5};
+        ExportedPackage packageA = Stubs.stub(ExportedPackage.class, "getName", "a",
+                "getVersion", new Version("1.0.0"), "getExportingBundle", bundle1,
+                "getImportingBundles", new Bundle[]{bundle2, bundle3});
+        ExportedPackage packageB = Stubs.stub(ExportedPackage.class, "getName", "b",
+                "getVersion", new Version("2.0.0"), "getExportingBundle", bundle1,
+                "getImportingBundles", new Bundle[]{bundle3});
+        RequiredBundle requiredBundle = Stubs.stub(RequiredBundle.class, "getBundle", bundle1,
+                "getRequiringBundles", new Bundle[]{bundle3}, "isRemovalPending", true);
+        packageAdmin = Stubs.stub(PackageAdmin.class,
+                "getExportedPackages", new ExportedPackage[]{packageA, packageB},
+                "getRequiredBundles", new RequiredBundle[]{requiredBundle},
+                "getFragments", Stubs.byArgument(bundle4, new Bundle[]{bundle5}),
+                "getHosts", Stubs.byArgument(bundle5, new Bundle[]{bundle4}));
+    }
+
+    @Test
+    public void testImportedPackages() throws Exception {
+        WiringSnapshot snapshot = new WiringSnapshot(bundles, packageAdmin);
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("a;1.0.0")),
+                new HashSet<String>(Arrays.asList(snapshot.getImportedPackages(bundle2))));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("a;1.0.0", "b;2.0.0")),
+                new HashSet<String>(Arrays.asList(snapshot.getImportedPackages(bundle3))));
+        Assert.assertEquals(0, snapshot.getImportedPackages(bundle1).length);
+    }
+
+    @Test
+    public void testFragmentsAndHosts() throws Exception {
+        WiringSnapshot snapshot = new WiringSnapshot(bundles, packageAdmin);
+        Assert.assertArrayEquals(new long[]{5}, snapshot.getFragments(bundle4));
+        Assert.assertArrayEquals(new long[]{4}, snapshot.getHosts(bundle5));
+        Assert.assertArrayEquals(new long[0], snapshot.getFragments(bundle5));
+        Assert.assertArrayEquals(new long[0], snapshot.getHosts(bundle4));
+    }
+
+    @Test
+    public void testRequiredBundles() throws Exception {
+        WiringSnapshot snapshot = new WiringSnapshot(bundles, packageAdmin);
+        Assert.assertArrayEquals(new long[]{1}, snapshot.getRequiredBundles(bundle3));
+        Assert.assertArrayEquals(new long[]{3}, snapshot.getRequiringBundles(bundle1));
+        Assert.assertArrayEquals(new long[0], snapshot.getRequiredBundles(bundle1));
+        Assert.assertTrue(snapshot.isRequired(bundle1));
+        Assert.assertTrue(snapshot.isRemovalPending(bundle1));
+        Assert.assertFalse(snapshot.isRequired(bundle3));
+        Assert.assertFalse(snapshot.isRemovalPending(bundle3));
+    }
+
+    @Test
+    public void testIndexedBundles() throws Exception {
+        WiringSnapshot snapshot = new WiringSnapshot(new Bundle[]{bundle3, bundle5}, packageAdmin);
+        Assert.assertEquals(2, snapshot.getImportedPackages(bundle3).length);
+        Assert.assertEquals(0, snapshot.getImportedPackages(bundle2).length);
+        Assert.assertArrayEquals(new long[]{1}, snapshot.getRequiredBundles(bundle3));
+        Assert.assertFalse(snapshot.isRequired(bundle1));
+        Assert.assertArrayEquals(new long[]{4}, snapshot.getHosts(bundle5));
+        Assert.assertArrayEquals(new long[0], snapshot.getFragments(bundle4));
+    }
+
+    @Test
+    public void testParts() throws Exception {
+        WiringSnapshot snapshot = new WiringSnapshot(bundles, Stubs.stub(PackageAdmin.class,
+                "getExportedPackages", new IllegalStateException("imports are not requested"),
+                "getRequiredBundles", new IllegalStateException("required bundles are not requested"),
+                "getFragments", Stubs.byArgument(bundle4, new Bundle[]{bundle5})), WiringSnapshot.FRAGMENTS);
+        Assert.assertArrayEquals(new long[]{5}, snapshot.getFragments(bundle4));
+        Assert.assertEquals(0, snapshot.getImportedPackages(bundle3).length);
+        Assert.assertArrayEquals(new long[0], snapshot.getRequiredBundles(bundle3));
+    }
+}